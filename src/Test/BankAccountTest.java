@@ -1,8 +1,13 @@
 package Test;
 import model.BankAccount;
 import org.junit.jupiter.api.BeforeEach;import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.nio.file.Path;
+import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 public class BankAccountTest {
+        @TempDir
+        Path dir;
         private BankAccount account;
         @BeforeEach
         void setUp() {
@@ -29,6 +34,23 @@ public class BankAccountTest {
             account.withdraw(200);
             assertEquals(3, account.getTransactionHistory().size());
         }
+        @Test
+        void testHistoryReadsBackWhenAFlushedChunkOutlivesTheWindow() {
+            account.archiveHistory(dir.resolve("1001.hist"), 8);
+            for (int i = 1; i <= 5; i++) {
+                account.deposit(i);}
+            account.flushHistory(); // Archives entries 0-5 and keeps them in memory
+            account.deposit(6);
+            account.deposit(7); // Spills entries 0-3, so the flushed chunk now runs into memory
+            assertEquals(8, account.getTransactionHistory().size());
+            assertEquals("Deposited: 7.0", account.getTransactions(0, 100).get(7).toString());
+            for (int i = 8; i <= 20; i++) {
+                account.deposit(i);}
+            List<String> history = account.getTransactionHistory();
+            assertEquals(21, history.size());
+            assertEquals("Deposited: 20.0", history.get(20));
+            assertEquals(21, account.getTransactions(0, 100).size());
+            assertEquals(6, account.getTransactions(6, 5).get(0).getSequence());}
 }
 
 
@@ -0,0 +1,214 @@
+package Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import model.Transaction;
+import service.AccrualEngine;
+import service.AccrualRule;
+import service.BankBatch;
+import service.BankSequencer;
+import service.BankService;
+import service.IdempotencyCache;
+import java.util.concurrent.CompletionException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+public class BankServiceTest {
+        @TempDir
+        Path dir;
+        private BankService bank;
+        @BeforeEach
+        void setUp() {
+            bank = new BankService();
+            bank.createAccount("1001", "Alice", 1000);
+            bank.createAccount("1002", "Bob", 500);}
+        @Test
+        void testTransfer() {
+            bank.transfer("1001", "1002", 300);
+            assertEquals(700, bank.checkBalance("1001"));
+            assertEquals(800, bank.checkBalance("1002"));}
+        @Test
+        void testTransferInsufficientFundsChangesNothing() {
+            Exception ex = assertThrows(IllegalArgumentException.class, () -> bank.transfer("1002", "1001", 900));
+            assertEquals("Insufficient balance.", ex.getMessage());
+            assertEquals(500, bank.checkBalance("1002"));
+            assertEquals(1000, bank.checkBalance("1001"));}
+        @Test
+        void testConcurrentTransfersKeepTotal() throws InterruptedException {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                boolean forward = t % 2 == 0;
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        try {
+                            bank.transfer(forward ? "1001" : "1002", forward ? "1002" : "1001", 1);
+                        } catch (IllegalArgumentException ignored) {
+                            // Insufficient balance is fine here
+                        }
+                    }
+                });
+                threads.add(thread);
+                thread.start();}
+            for (Thread thread : threads) thread.join();
+            assertEquals(1500, bank.checkBalance("1001") + bank.checkBalance("1002"));}
+        @Test
+        void testLedgerRecoversBalancesAcrossSegments() throws IOException {
+            // Tiny segments so recovery goes through both a compacted snapshot and a log tail
+            try (BankService durable = new BankService(dir, 1, true, 4)) {
+                durable.createAccount("1001", "Alice", 1000);
+                durable.createAccount("1002", "Bob", 500);
+                for (int i = 0; i < 10; i++) {
+                    durable.transfer("1001", "1002", 10);}
+                durable.deposit("1001", 0.25);
+                durable.withdraw("1002", 50);}
+            try (BankService recovered = new BankService(dir, 1, true, 4)) {
+                assertEquals(900.25, recovered.checkBalance("1001"));
+                assertEquals(550, recovered.checkBalance("1002"));
+                assertEquals("Bob", recovered.getAccount("1002").getAccountHolder());
+                assertThrows(IllegalArgumentException.class, () -> recovered.createAccount("1001", "Eve", 1));}}
+        @Test
+        void testHistoryPagesSpanArchiveAndMemory() throws IOException {
+            try (BankService durable = new BankService(dir, 1, false, 100_000)) {
+                durable.createAccount("1001", "Alice", 0);
+                for (int i = 1; i <= 5000; i++) {
+                    durable.deposit("1001", i);}
+                List<Transaction> first = durable.getTransactions("1001", 0, 3);
+                assertEquals("Account opened with balance: 0.0", first.get(0).toString());
+                assertEquals("Deposited: 2.0", first.get(2).toString());
+                List<Transaction> last = durable.getTransactions("1001", 4999, 10);
+                assertEquals(2, last.size());
+                assertEquals(5000, last.get(1).getSequence());
+                assertEquals(5001, durable.getAccount("1001").getTransactionCount());
+                long now = System.currentTimeMillis();
+                assertEquals(5, durable.getTransactionsBetween("1001", 0, now + 1, 5).size());
+                assertTrue(durable.getTransactionsBetween("1001", now + 1, Long.MAX_VALUE, 5).isEmpty());}}
+        @Test
+        void testHistorySurvivesRestartAfterLedgerCompaction() throws IOException {
+            // Small segments: most events are folded into the snapshot before the restart
+            try (BankService durable = new BankService(dir, 1, false, 1000)) {
+                durable.createAccount("1001", "Alice", 0);
+                durable.createAccount("1002", "Bob", 100_000);
+                for (int i = 1; i <= 5000; i++) {
+                    durable.deposit("1001", i);}
+                durable.transfer("1002", "1001", 7);}
+            try (BankService recovered = new BankService(dir, 1, false, 1000)) {
+                assertEquals(5002, recovered.getAccount("1001").getTransactionCount());
+                List<Transaction> first = recovered.getTransactions("1001", 0, 3);
+                assertEquals("Account opened with balance: 0.0", first.get(0).toString());
+                assertEquals("Deposited: 2.0", first.get(2).toString());
+                List<Transaction> last = recovered.getTransactions("1001", 4999, 10);
+                assertEquals(3, last.size());
+                assertEquals("Received from 1002: 7.0", last.get(2).toString());
+                assertEquals(2, recovered.getAccount("1002").getTransactionCount());
+                recovered.deposit("1001", 1);}
+            try (BankService again = new BankService(dir, 1, false, 1000)) {
+                assertEquals(5003, again.getAccount("1001").getTransactionCount());
+                assertEquals("Deposited: 4000.0", again.getTransactions("1001", 4000, 1).get(0).toString());
+                assertEquals(5002, again.getTransactions("1001", 5002, 1).get(0).getSequence());}}
+        @Test
+        void testBatchReportsEachOperation() {
+            BankBatch.Result result = bank.process(new BankBatch()
+                    .withdraw("1002", 400)
+                    .withdraw("1002", 200)
+                    .deposit("1001", 50)
+                    .deposit("9999", 10)
+                    .deposit("1002", -5)
+                    .withdraw("1002", 100));
+            assertTrue(result.isSuccess(0));
+            assertEquals("Insufficient balance.", result.getError(1));
+            assertTrue(result.isSuccess(2));
+            assertEquals("Account not found.", result.getError(3));
+            assertEquals("Deposit amount must be positive.", result.getError(4));
+            assertTrue(result.isSuccess(5));
+            assertEquals(3, result.getSucceeded());
+            assertEquals(0, bank.checkBalance("1002"));
+            assertEquals(1050, bank.checkBalance("1001"));}
+        @Test
+        void testSequencerAppliesCommandsInOrder() {
+            try (BankSequencer sequencer = new BankSequencer(bank, 8)) {
+                for (int i = 0; i < 100; i++) {
+                    sequencer.deposit("1002", 1);}
+                CompletionException ex = assertThrows(CompletionException.class,
+                        () -> sequencer.withdraw("1002", 601).join());
+                assertEquals("Insufficient balance.", ex.getCause().getMessage());
+                sequencer.transfer("1002", "1001", 600);
+                assertEquals(0.0, sequencer.checkBalance("1002").join().doubleValue());
+                assertEquals(1600.0, sequencer.checkBalance("1001").join().doubleValue());}}
+        @Test
+        void testSequencerRejectsCommandsAfterClose() {
+            BankSequencer sequencer = new BankSequencer(bank, 8);
+            sequencer.deposit("1001", 1);
+            sequencer.close();
+            CompletionException ex = assertThrows(CompletionException.class, () -> sequencer.deposit("1001", 1).join());
+            assertEquals("Sequencer is closed.", ex.getCause().getMessage());
+            assertEquals(1001, bank.checkBalance("1001"));}
+        @Test
+        void testRetriedRequestsAreAppliedOnce() {
+            bank.deposit("1001", 100, 42L);
+            bank.deposit("1001", 100, 42L);
+            assertEquals(1100, bank.checkBalance("1001"));
+            for (int attempt = 0; attempt < 2; attempt++) {
+                Exception ex = assertThrows(IllegalArgumentException.class, () -> bank.withdraw("1002", 900, 43L));
+                assertEquals("Insufficient balance.", ex.getMessage());}
+            bank.deposit("1002", 1000);
+            assertThrows(IllegalArgumentException.class, () -> bank.withdraw("1002", 900, 43L));
+            assertEquals(1500, bank.checkBalance("1002"));
+            Exception ex = assertThrows(IllegalArgumentException.class, () -> bank.withdraw("1001", 5, 42L));
+            assertEquals("Idempotency key was already used for a different request.", ex.getMessage());}
+        @Test
+        void testFullIdempotencyCacheWaitsInsteadOfDroppingRunningRequests() throws InterruptedException {
+            IdempotencyCache cache = new IdempotencyCache(1, 60_000);
+            long fingerprint = IdempotencyCache.fingerprint(5, "deposit", "1001");
+            assertTrue(fingerprint != IdempotencyCache.fingerprint(5.01, "deposit", "1001"));
+            assertEquals(IdempotencyCache.CLAIMED, cache.claim(1L, fingerprint));
+            int[] second = new int[1];
+            Thread other = new Thread(() -> second[0] = cache.claim(2L, fingerprint));
+            other.start();
+            other.join(200);
+            assertTrue(other.isAlive()); // Key 1 is still running, so it must not be evicted
+            cache.complete(1L, null);
+            other.join();
+            assertEquals(IdempotencyCache.CLAIMED, second[0]);}
+        @Test
+        void testAccrualRunIsAppliedOncePerAccountAcrossRestart() throws IOException {
+            AccrualRule rule = AccrualRule.interest(0.01).plus(AccrualRule.fee(500, 100_000));
+            try (BankService durable = new BankService(dir, 1, true, 2)) {
+                durable.createAccount("1001", "Alice", 2000);
+                durable.createAccount("1002", "Bob", 3);
+                AccrualEngine.Report report = new AccrualEngine(durable).run("2026-10-18", rule);
+                assertEquals(1, report.getCredited());
+                assertEquals(1, report.getCharged());}
+            // Tiny segments: the run IDs survive both snapshot compaction and log replay
+            try (BankService recovered = new BankService(dir, 1, true, 2)) {
+                assertEquals(2020, recovered.checkBalance("1001"));
+                assertEquals(0, recovered.checkBalance("1002"));
+                AccrualEngine.Report again = new AccrualEngine(recovered).run("2026-10-18", rule);
+                assertEquals(2, again.getAlreadyApplied());
+                assertEquals(2020, recovered.checkBalance("1001"));
+                assertEquals("2026-10-18", recovered.getAccount("1002").getLastAccrualRun());}}
+        @Test
+        void testOlderOrEmptyAccrualRunsAreNotReappliedAfterRestart() throws IOException {
+            AccrualRule fee = AccrualRule.fee(500, 100_000);
+            try (BankService durable = new BankService(dir, 1, true, 2)) {
+                durable.createAccount("1001", "Alice", 20);
+                durable.createAccount("1002", "Bob", -5);
+                AccrualEngine.Report empty = new AccrualEngine(durable).run("2026-10-18", AccrualRule.interest(0));
+                assertEquals(0, empty.getCredited() + empty.getCharged());}
+            try (BankService recovered = new BankService(dir, 1, true, 2)) {
+                // The zero adjustments were journaled, so the fee is not charged under the old run ID
+                assertEquals(2, new AccrualEngine(recovered).run("2026-10-18", fee).getAlreadyApplied());
+                assertEquals(1, new AccrualEngine(recovered).run("2026-10-19", fee).getCharged());
+                assertEquals(15, recovered.checkBalance("1001"));
+                assertEquals(-5, recovered.checkBalance("1002")); // A fee never turns a negative balance into a credit
+                // Resuming an older run after a newer one completed changes nothing
+                assertEquals(2, new AccrualEngine(recovered).run("2026-10-17", fee).getAlreadyApplied());
+                assertEquals(15, recovered.checkBalance("1001"));}}
+        @Test
+        void testBalanceQueriesReportMissesWithoutThrowing() {
+            assertEquals(1000, bank.findBalance("1001").getAsDouble());
+            assertFalse(bank.findBalance("9999").isPresent());
+            assertEquals(50000, bank.balanceCentsOrMissing("1002"));
+            assertEquals(BankService.MISSING, bank.balanceCentsOrMissing("9999"));}
+}
@@ -0,0 +1,92 @@
+package Test;
+import model.InventoryItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import service.ConcurrentInventoryManager;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.*;
+public class ConcurrentInventoryManagerTest {
+        @TempDir
+        Path dir;
+        private ConcurrentInventoryManager manager;
+        @BeforeEach
+        void setUp() {
+            manager = open();
+            manager.addItem(new InventoryItem("A1", "Pen", 10, 1.5));
+            manager.addItem(new InventoryItem("B2", "Notebook", 3, 4.0));
+            manager.addItem(new InventoryItem("C3", "Pencil box", 0, 7.25));}
+        @AfterEach
+        void tearDown() throws IOException {
+            manager.close();}
+        private ConcurrentInventoryManager open() {
+            return new ConcurrentInventoryManager(dir.resolve("inventory.dat").toString(),
+                    dir.resolve("inventory.journal").toString());}
+        private static List<String> ids(List<InventoryItem> items) {
+            return items.stream().map(InventoryItem::getId).collect(Collectors.toList());}
+        @Test
+        void testSearchFollowsUpdatesAndDeletes() {
+            assertEquals(List.of("A1", "C3"), ids(manager.searchItems("PEN")));
+            assertEquals(List.of("B2"), ids(manager.searchItems("b2")));
+            manager.updateItem("B2", "Pen refill", 3, 4.0);
+            manager.deleteItem("A1");
+            assertEquals(List.of("B2", "C3"), ids(manager.searchItems("pen")));
+            assertEquals(List.of("B2"), ids(manager.searchItems("refill")));
+            assertTrue(manager.searchItems("notebook").isEmpty());}
+        @Test
+        void testSearchKeepsInsertionOrderAfterSlotCompaction() {
+            for (int i = 0; i < 200; i++) {
+                manager.addItem(new InventoryItem("T" + i, "Tape " + i, i, 1));}
+            for (int i = 0; i < 200; i += 2) {
+                manager.deleteItem("T" + i);}
+            List<String> expected = new ArrayList<>();
+            for (int i = 1; i < 200; i += 2) {
+                expected.add("T" + i);}
+            assertEquals(expected, ids(manager.searchItems("tape")));
+            assertEquals(List.of("T1", "T11", "T13"), ids(manager.searchItems("tape 1")).subList(0, 3));}
+        @Test
+        void testConcurrentWritersSurviveRestart() throws Exception {
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int base = t * 1000;
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        manager.addItem(new InventoryItem("W" + (base + i), "Widget", i, 2.0));}});
+                threads.add(thread);
+                thread.start();}
+            for (Thread thread : threads) {
+                thread.join();}
+            manager.updateItem("W1", "Gadget", 1, 2.0);
+            manager.close();
+            manager = open();
+            assertEquals(2003, manager.size());
+            assertEquals("Gadget", manager.getItemById("W1").get().getName());
+            assertEquals(2000, manager.searchItems("widget").size() + 1);}
+        @Test
+        void testUseAfterCloseIsRejected() throws IOException {
+            manager.close();
+            manager.close();
+            assertThrows(IllegalStateException.class, () -> manager.addItem(new InventoryItem("D4", "Stapler", 1, 1)));
+            assertThrows(IllegalStateException.class, () -> manager.updateItem("A1", "Pen", 1, 1));
+            assertThrows(IllegalStateException.class, manager::flush);
+            assertEquals(3, manager.size());}
+        @Test
+        void testFailedJournalWriteIsReportedUntilASnapshotCoversIt() throws Exception {
+            Path journal = Files.createDirectory(dir.resolve("blocked.journal")); // Cannot be opened for writing
+            ConcurrentInventoryManager blocked = new ConcurrentInventoryManager(dir.resolve("blocked.dat").toString(),
+                    journal.toString());
+            blocked.addItem(new InventoryItem("E5", "Eraser", 4, 0.5));
+            assertThrows(IOException.class, blocked::flush);
+            Files.delete(journal);
+            blocked.flush();
+            blocked.close();
+            blocked = new ConcurrentInventoryManager(dir.resolve("blocked.dat").toString(), journal.toString());
+            assertEquals(4, blocked.getItemById("E5").get().getQuantity());
+            blocked.close();}
+}
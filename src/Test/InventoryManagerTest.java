@@ -0,0 +1,217 @@
+package Test;
+import model.InventoryItem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import service.Durability;
+import service.InventoryColumns;
+import service.InventoryCsv;
+import service.InventoryManager;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.*;
+public class InventoryManagerTest {
+        @TempDir
+        Path dir;
+        private InventoryManager manager;
+        @BeforeEach
+        void setUp() {
+            manager = open();
+            manager.addItem(new InventoryItem("A1", "Pen", 10, 1.5));
+            manager.addItem(new InventoryItem("B2", "Notebook", 3, 4.0));
+            manager.addItem(new InventoryItem("C3", "Pencil box", 0, 7.25));}
+        @AfterEach
+        void tearDown() {
+            manager.close();}
+        private InventoryManager open() {
+            return new InventoryManager(dir.resolve("inventory.dat").toString(), dir.resolve("inventory.journal").toString());}
+        private static List<String> ids(List<InventoryItem> items) {
+            return items.stream().map(InventoryItem::getId).collect(Collectors.toList());}
+        private InventoryManager open(String name, long flushIntervalMillis, int maxBatchSize, Durability durability) {
+            return new InventoryManager(dir.resolve(name + ".dat").toString(), dir.resolve(name + ".journal").toString(),
+                    flushIntervalMillis, maxBatchSize, durability);}
+        // What a restart would recover if the process died now: the writer's buffer is not read
+        private List<String> onDisk(String name) {
+            InventoryManager reader = open(name, 60_000, 512, Durability.DEFERRED);
+            List<String> ids = ids(reader.getAllItems());
+            reader.close();
+            return ids;}
+        @Test
+        void testDuplicateIdRejected() {
+            assertFalse(manager.addItem(new InventoryItem("A1", "Other", 1, 1)));
+            assertEquals(3, manager.getAllItems().size());}
+        @Test
+        void testChangesSurviveRestart() {
+            manager.updateItem("B2", "Notepad", 5, 3.0);
+            manager.deleteItem("A1");
+            manager.close();
+            manager = open();
+            assertEquals(List.of("B2", "C3"), ids(manager.getAllItems()));
+            assertEquals("Notepad", manager.getItemById("B2").get().getName());}
+        @Test
+        void testTornJournalTailIsCutBeforeNewAppends() throws Exception {
+            manager.close();
+            // A crash mid-append: a length prefix and part of a record
+            Files.write(dir.resolve("inventory.journal"), new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+            manager = open();
+            manager.addItem(new InventoryItem("D4", "Stapler", 2, 9.0));
+            manager.close();
+            manager = open();
+            assertEquals(List.of("A1", "B2", "C3", "D4"), ids(manager.getAllItems()));}
+        @Test
+        void testLargeBatchIsJournaledWhenSnapshotFails() throws Exception {
+            Path blocker = Files.createDirectory(dir.resolve("inventory.dat.tmp")); // Snapshot writes now fail
+            List<InventoryItem> batch = new ArrayList<>();
+            for (int i = 0; i < 1500; i++) {
+                batch.add(new InventoryItem("X" + i, "Bolt " + i, i, 0.1));}
+            assertEquals(1500, manager.addItems(batch, Durability.SYNCED));
+            manager.close();
+            Files.delete(blocker);
+            manager = open();
+            assertEquals(1503, manager.size());
+            assertEquals("Bolt 1499", manager.getItemById("X1499").get().getName());}
+        @Test
+        void testCsvExportRoundTripsQuotesAndNewlines() throws Exception {
+            manager.addItem(new InventoryItem("D4", "Pens, \"blue\"\nbox of 10", 4, 2.5));
+            Path csv = dir.resolve("items.csv");
+            new InventoryCsv().exportTo(csv, InventoryCsv.CSV, manager);
+            InventoryManager copy = new InventoryManager(dir.resolve("copy.dat").toString(),
+                    dir.resolve("copy.journal").toString());
+            InventoryCsv.ImportResult result = new InventoryCsv().importFrom(csv, InventoryCsv.CSV, copy, Durability.DEFERRED);
+            assertEquals(List.of(), result.getErrors());
+            assertEquals(4, result.getImported());
+            assertEquals("Pens, \"blue\"\nbox of 10", copy.getItemById("D4").get().getName());
+            assertEquals(7.25, copy.getItemById("C3").get().getPrice());
+            copy.close();}
+        @Test
+        void testMappedModeReusesSlotsAndSurvivesReopen() throws Exception {
+            String file = dir.resolve("inventory.slots").toString();
+            InventoryManager mapped = InventoryManager.openMapped(file);
+            mapped.addItem(new InventoryItem("A1", "Pen", 10, 1.5));
+            mapped.addItem(new InventoryItem("B2", "Notebook", 3, 4.0));
+            mapped.addItem(new InventoryItem("C3", "Pencil box", 0, 7.25));
+            assertTrue(mapped.deleteItem("B2"));
+            mapped.addItem(new InventoryItem("D4", "Stapler", 2, 9.0)); // Takes the slot B2 freed
+            assertTrue(mapped.updateItem("A1", "Pen", 7, 1.75));
+            assertFalse(mapped.addItem(new InventoryItem("C3", "Other", 1, 1)));
+            mapped.close();
+            mapped = InventoryManager.openMapped(file);
+            assertEquals(List.of("A1", "D4", "C3"), ids(mapped.getAllItems()));
+            assertEquals(7, mapped.getItemById("A1").get().getQuantity());
+            assertEquals(List.of("A1", "C3"), ids(mapped.searchItems("PEN")));
+            assertEquals(List.of("C3", "D4"), ids(mapped.itemsWithQuantityBelow(5)));
+            mapped.close();}
+        @Test
+        void testSearchIsCaseInsensitiveSubstring() {
+            assertEquals(List.of("A1", "C3"), ids(manager.searchItems("PEN")));
+            assertEquals(List.of("B2"), ids(manager.searchItems("b2")));
+            assertTrue(manager.searchItems("xyz").isEmpty());}
+        @Test
+        void testRangeQueriesFollowUpdates() {
+            assertEquals(List.of("C3", "B2"), ids(manager.itemsWithQuantityBelow(5)));
+            manager.updateItem("C3", "Pencil box", 50, 7.25);
+            assertEquals(List.of("B2"), ids(manager.itemsWithQuantityBelow(5)));
+            assertEquals(List.of("A1", "B2"), ids(manager.itemsInPriceRange(1.5, 4.0)));}
+        @Test
+        void testDeferredChangesWaitForTheGroupCommit() {
+            InventoryManager writer = open("deferred", 60_000, 512, Durability.DEFERRED);
+            writer.addItem(new InventoryItem("D4", "Stapler", 2, 9.0));
+            writer.addItem(new InventoryItem("E5", "Eraser", 4, 0.5), Durability.DEFERRED);
+            assertEquals(List.of(), onDisk("deferred"));
+            writer.close();
+            assertEquals(List.of("D4", "E5"), onDisk("deferred"));}
+        @Test
+        void testWrittenChangesSurviveWithoutClose() {
+            InventoryManager writer = open("written", 60_000, 512, Durability.WRITTEN);
+            writer.addItem(new InventoryItem("D4", "Stapler", 2, 9.0));
+            writer.addItem(new InventoryItem("E5", "Eraser", 4, 0.5), Durability.DEFERRED);
+            writer.updateItem("D4", "Stapler", 1, 9.0, Durability.WRITTEN); // Also writes E5, queued before it
+            assertEquals(List.of("D4", "E5"), onDisk("written"));
+            writer.close();}
+        @Test
+        void testSyncedChangesSurviveWithoutClose() {
+            InventoryManager writer = open("synced", 60_000, 512, Durability.SYNCED);
+            writer.addItem(new InventoryItem("D4", "Stapler", 2, 9.0));
+            writer.addItem(new InventoryItem("E5", "Eraser", 4, 0.5));
+            writer.deleteItem("D4", Durability.SYNCED);
+            assertEquals(List.of("E5"), onDisk("synced"));
+            writer.close();}
+        @Test
+        void testFullBatchIsGroupCommittedRightAway() {
+            InventoryManager writer = open("batch", 60_000, 3, Durability.DEFERRED);
+            writer.addItem(new InventoryItem("D4", "Stapler", 2, 9.0));
+            writer.addItem(new InventoryItem("E5", "Eraser", 4, 0.5));
+            assertEquals(List.of(), onDisk("batch"));
+            writer.addItem(new InventoryItem("F6", "Folder", 8, 1.25));
+            assertEquals(List.of("D4", "E5", "F6"), onDisk("batch"));
+            writer.close();}
+        @Test
+        void testTimerCommitsDeferredChanges() throws Exception {
+            InventoryManager writer = open("timer", 20, 512, Durability.DEFERRED);
+            writer.addItem(new InventoryItem("D4", "Stapler", 2, 9.0));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (onDisk("timer").isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);}
+            assertEquals(List.of("D4"), onDisk("timer"));
+            writer.close();}
+        @Test
+        void testFailedJournalWriteIsCoveredByTheNextSnapshot() throws Exception {
+            Path journal = Files.createDirectory(dir.resolve("failed.journal")); // Journal writes now fail
+            InventoryManager writer = open("failed", 60_000, 512, Durability.SYNCED);
+            assertTrue(writer.addItem(new InventoryItem("D4", "Stapler", 2, 9.0)));
+            assertEquals(List.of("D4"), ids(writer.getAllItems()));
+            Files.delete(journal);
+            writer.compact();
+            assertEquals(List.of("D4"), onDisk("failed"));
+            writer.close();}
+        @Test
+        void testColumnAggregates() {
+            InventoryColumns columns = manager.getColumns();
+            assertEquals(27.0, columns.totalStockValue());
+            assertEquals(13L, columns.totalQuantity());
+            assertEquals(2, columns.countQuantityBelow(5));
+            assertEquals(1.5, columns.minPrice().getAsDouble());
+            assertEquals(7.25, columns.maxPrice().getAsDouble());
+            assertEquals(Map.of("Pen", 15.0, "Not", 12.0), columns.stockValueByNamePrefix(3));}
+        @Test
+        void testColumnsFollowUpdatesAndDeletes() {
+            manager.addItem(new InventoryItem("D4", "Pen", 1, 2.0));
+            manager.updateItem("B2", "Pen refill", 2, 5.0);
+            manager.deleteItem("A1");
+            InventoryColumns columns = manager.getColumns();
+            assertEquals(3, columns.size());
+            assertEquals(12.0, columns.totalStockValue());
+            assertEquals(3L, columns.totalQuantity());
+            assertEquals(3, columns.countQuantityBelow(5));
+            assertEquals(2.0, columns.minPrice().getAsDouble());
+            assertEquals(Map.of("Pen", 12.0), columns.stockValueByNamePrefix(3));
+            assertEquals(3, columns.distinctNameCount()); // "Notebook" left with its last row
+            manager.deleteItem("D4");
+            manager.deleteItem("B2");
+            manager.deleteItem("C3");
+            assertEquals(0, columns.distinctNameCount());
+            assertFalse(columns.minPrice().isPresent());
+            assertEquals(Map.of(), columns.stockValueByNamePrefix(3));}
+        @Test
+        void testParallelColumnScansMatchTheRows() {
+            List<InventoryItem> batch = new ArrayList<>();
+            for (int i = 0; i < 70_000; i++) {
+                batch.add(new InventoryItem("X" + i, "Bolt " + (i % 100), Integer.MAX_VALUE - i, 0.5));}
+            manager.addItems(batch, Durability.DEFERRED);
+            long quantity = 0;
+            int below = 0;
+            for (InventoryItem item : manager.getAllItems()) {
+                quantity += item.getQuantity();
+                below += item.getQuantity() < Integer.MAX_VALUE - 35_000 ? 1 : 0;}
+            InventoryColumns columns = manager.getColumns();
+            assertEquals(quantity, columns.totalQuantity());
+            assertEquals(below, columns.countQuantityBelow(Integer.MAX_VALUE - 35_000));
+            assertEquals(103, columns.distinctNameCount());
+            assertEquals(7.25, columns.maxPrice().getAsDouble());}
+}
@@ -0,0 +1,43 @@
+package Test;
+import org.junit.jupiter.api.Test;
+import util.PersistentHashMap;
+import java.util.HashMap;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+public class PersistentHashMapTest {
+        @Test
+        void testOldVersionsAreUnchanged() {
+            PersistentHashMap<String, Integer> empty = PersistentHashMap.empty();
+            PersistentHashMap<String, Integer> one = empty.put("a", 1);
+            PersistentHashMap<String, Integer> two = one.put("a", 2).put("b", 3);
+            assertTrue(empty.isEmpty());
+            assertEquals(1, one.get("a").intValue());
+            assertNull(one.get("b"));
+            assertEquals(2, two.get("a").intValue());
+            assertEquals(2, two.size());
+            assertEquals(1, two.remove("a").size());
+            assertEquals(2, two.get("a").intValue());}
+        @Test
+        void testMatchesHashMapAcrossManyKeysAndCollisions() {
+            // "Aa" and "BB" share a hash code, so collision nodes are exercised too
+            Map<String, Integer> expected = new HashMap<>();
+            PersistentHashMap<String, Integer> map = PersistentHashMap.empty();
+            for (int i = 0; i < 5000; i++) {
+                String key = (i % 2 == 0 ? "Aa" : "BB") + i / 2;
+                expected.put(key, i);
+                map = map.put(key, i);}
+            for (int i = 0; i < 5000; i += 3) {
+                String key = (i % 2 == 0 ? "Aa" : "BB") + i / 2;
+                expected.remove(key);
+                map = map.remove(key);}
+            assertEquals(expected.size(), map.size());
+            for (Map.Entry<String, Integer> e : expected.entrySet()) {
+                assertEquals(e.getValue(), map.get(e.getKey()));}
+            Map<String, Integer> visited = new HashMap<>();
+            map.forEach(visited::put);
+            assertEquals(expected, visited);
+            assertSame(map, map.remove("missing"));}
+        @Test
+        void testNullValuesAreRejected() {
+            assertThrows(IllegalArgumentException.class, () -> PersistentHashMap.empty().put("a", null));}
+}
@@ -0,0 +1,37 @@
+package Test;
+import org.junit.jupiter.api.Test;
+import util.PersistentVector;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+public class PersistentVectorTest {
+        @Test
+        void testAppendAndSetAcrossTrieLevels() {
+            // Past 32 * 32 + 32 elements the trie needs a second level
+            PersistentVector<Integer> vector = PersistentVector.empty();
+            for (int i = 0; i < 40_000; i++) {
+                vector = vector.append(i);}
+            assertEquals(40_000, vector.size());
+            for (int i = 0; i < 40_000; i += 7) {
+                assertEquals(i, vector.get(i).intValue());}
+            PersistentVector<Integer> changed = vector.set(1000, -1).set(39_999, -2);
+            assertEquals(-1, changed.get(1000).intValue());
+            assertEquals(-2, changed.get(39_999).intValue());
+            assertEquals(1000, vector.get(1000).intValue());
+            assertEquals(39_999, vector.get(39_999).intValue());}
+        @Test
+        void testForEachVisitsInIndexOrder() {
+            PersistentVector<Integer> vector = PersistentVector.empty();
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < 1100; i++) {
+                vector = vector.append(i * 2);
+                expected.add(i * 2);}
+            List<Integer> visited = new ArrayList<>();
+            vector.forEach(visited::add);
+            assertEquals(expected, visited);}
+        @Test
+        void testOutOfRangeIndexIsRejected() {
+            PersistentVector<String> vector = PersistentVector.<String>empty().append("a");
+            assertThrows(IndexOutOfBoundsException.class, () -> vector.get(1));
+            assertThrows(IndexOutOfBoundsException.class, () -> vector.set(-1, "b"));}
+}
@@ -0,0 +1,61 @@
+package Test;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import service.BankShardServer;
+import service.ShardedBankService;
+import java.io.IOException;
+import java.util.Arrays;
+import static org.junit.jupiter.api.Assertions.*;
+public class ShardedBankServiceTest {
+        private ShardedBankService bank;
+        private String a;
+        private String b;
+        @BeforeEach
+        void setUp() throws IOException {
+            bank = ShardedBankService.startLocal(3, null);
+            // Pick two accounts that live on different shards
+            a = "1001";
+            int n = 1002;
+            while (bank.shardOf(String.valueOf(n)) == bank.shardOf(a)) n++;
+            b = String.valueOf(n);
+            bank.createAccount(a, "Alice", 1000);
+            bank.createAccount(b, "Bob", 500);}
+        @AfterEach
+        void tearDown() throws IOException {
+            bank.close();}
+        @Test
+        void testCrossShardTransfer() {
+            bank.transfer(a, b, 300);
+            assertEquals(700, bank.checkBalance(a));
+            assertEquals(800, bank.checkBalance(b));}
+        @Test
+        void testCrossShardTransferFailuresChangeNothing() {
+            Exception ex = assertThrows(IllegalArgumentException.class, () -> bank.transfer(b, a, 900));
+            assertEquals("Insufficient balance.", ex.getMessage());
+            ex = assertThrows(IllegalArgumentException.class, () -> bank.transfer(a, "missing", 10));
+            assertEquals("Account not found.", ex.getMessage());
+            assertEquals(1000, bank.checkBalance(a));
+            assertEquals(500, bank.checkBalance(b));}
+        @Test
+        void testDuplicateAccountRejectedByOwningShard() {
+            Exception ex = assertThrows(IllegalArgumentException.class, () -> bank.createAccount(a, "Eve", 1));
+            assertEquals("Account already exists.", ex.getMessage());}
+        @Test
+        void testAbortedCrossShardTransferIsRecordedAsCancelled() throws IOException {
+            try (BankShardServer first = new BankShardServer();
+                 BankShardServer second = new BankShardServer();
+                 ShardedBankService router = new ShardedBankService(Arrays.asList(first.getAddress(),
+                         second.getAddress()))) {
+                int n = 1;
+                while (router.shardOf("x" + n) == router.shardOf(a)) n++;
+                String missing = "x" + n;
+                router.createAccount(a, "Alice", 100);
+                Exception ex = assertThrows(IllegalArgumentException.class, () -> router.transfer(a, missing, 30));
+                assertEquals("Account not found.", ex.getMessage());
+                assertEquals(100, router.checkBalance(a));
+                BankShardServer owner = router.shardOf(a) == 0 ? first : second;
+                assertEquals(Arrays.asList("Account opened with balance: 100.0", "Transferred to " + missing + ": 30.0",
+                        "Transfer to " + missing + " cancelled: 30.0"),
+                        owner.getBank().getAccount(a).getTransactionHistory());}}
+}
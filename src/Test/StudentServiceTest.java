@@ -0,0 +1,153 @@
+package Test;
+import model.Student;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import service.ConcurrentStudentService;
+import service.StudentService;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.*;
+public class StudentServiceTest {
+        @TempDir
+        Path dir;
+        private StudentService service;
+        @BeforeEach
+        void setUp() {
+            service = new StudentService();
+            service.addStudent(new Student(1, "Asha", "Physics"));
+            service.addStudent(new Student(2, "Ravi", "Maths"));
+            service.addStudent(new Student(3, "Meera", "Physics"));}
+        private StudentService open() {
+            return new StudentService(dir.resolve("students.dat"), dir.resolve("students.log"));}
+        private static List<Integer> ids(List<Student> students) {
+            return students.stream().map(Student::getId).collect(Collectors.toList());}
+        @Test
+        void testDuplicateIdRejected() {
+            assertFalse(service.addStudent(new Student(2, "Other", "Art")));
+            assertEquals(3, service.size());
+            assertEquals("Ravi", service.getStudentById(2).get().getName());}
+        @Test
+        void testUpdateMovesStudentBetweenCourses() {
+            assertTrue(service.updateStudent(1, "Asha K", "Maths"));
+            assertEquals(List.of(3), ids(service.studentsInCourse("Physics")));
+            assertEquals(List.of(2, 1), ids(service.studentsInCourse("Maths")));
+            assertFalse(service.updateStudent(9, "Nobody", "Art"));}
+        @Test
+        void testDeleteKeepsOrderAndIndexes() {
+            assertTrue(service.deleteStudent(1));
+            assertFalse(service.deleteStudent(1));
+            for (int id = 10; id < 100; id++) {
+                service.addStudent(new Student(id, "S" + id, "Art"));
+                service.deleteStudent(id - 1);}
+            assertEquals(List.of(2, 3, 99), ids(service.getAllStudents()));
+            assertEquals(List.of(2, 3, 99), ids(service.studentsView()));
+            assertEquals(99, service.studentsView().get(2).getId());
+            assertEquals(List.of(3), ids(service.studentsInCourse("Physics")));
+            assertTrue(service.studentsInCourse("History").isEmpty());}
+        @Test
+        void testChangesSurviveRestartBeforeAndAfterCompaction() {
+            StudentService stored = open();
+            List<Student> batch = new ArrayList<>();
+            for (int id = 1; id <= 2000; id++) {
+                batch.add(new Student(id, "S" + id, id % 2 == 0 ? "Maths" : "Art"));}
+            assertEquals(2000, stored.addStudents(batch)); // Written as a snapshot
+            stored.updateStudent(2, "Two", "Physics");
+            stored.deleteStudent(3);
+            stored.addStudent(new Student(5000, "Last", "Art"));
+            stored.flush();
+            stored.close();
+            stored = open();
+            assertEquals("Two", stored.getStudentById(2).get().getName()); // May be served before loading ends
+            assertFalse(stored.getStudentById(3).isPresent());
+            assertEquals("Last", stored.getStudentById(5000).get().getName());
+            assertEquals(2000, stored.size());
+            assertEquals(List.of(2), ids(stored.studentsInCourse("Physics")));
+            assertEquals(5000, stored.getAllStudents().get(1999).getId());
+            stored.close();}
+        @Test
+        void testTornLogTailIsIgnored() throws Exception {
+            StudentService stored = open();
+            stored.addStudent(new Student(1, "Asha", "Physics"));
+            stored.addStudent(new Student(2, "Ravi", "Maths"));
+            stored.flush();
+            Path log = dir.resolve("students.log");
+            long size = Files.size(log);
+            try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+                channel.truncate(size - 3);} // Crash in the middle of the last append
+            stored = open();
+            assertEquals(List.of(1), ids(stored.getAllStudents()));
+            stored.addStudent(new Student(3, "Meera", "Physics"));
+            stored.close();
+            stored = open();
+            assertEquals(List.of(1, 3), ids(stored.getAllStudents()));
+            stored.close();}
+        @Test
+        void testConcurrentSnapshotIsUnaffectedByLaterWrites() throws Exception {
+            ConcurrentStudentService concurrent = new ConcurrentStudentService();
+            concurrent.addStudent(new Student(1, "Asha", "Physics"));
+            concurrent.addStudent(new Student(2, "Ravi", "Maths"));
+            ConcurrentStudentService.Snapshot before = concurrent.snapshot();
+            Thread feeder = new Thread(() -> {
+                for (int id = 100; id < 1100; id++) {
+                    concurrent.addStudent(new Student(id, "S" + id, "Physics"));}});
+            feeder.start();
+            concurrent.updateStudent(1, "Asha K", "Maths");
+            concurrent.deleteStudent(2);
+            feeder.join();
+            assertEquals(List.of(1, 2), ids(before.getAllStudents()));
+            assertEquals("Asha", before.getStudentById(1).get().getName());
+            assertEquals(List.of(1), ids(before.studentsInCourse("Physics")));
+            assertEquals(1001, concurrent.size());
+            assertEquals(List.of(1), ids(concurrent.studentsInCourse("Maths")));
+            assertEquals(1000, concurrent.studentsInCourse("Physics").size());}
+        @Test
+        void testConcurrentServiceSharesStorageWithStudentService() throws Exception {
+            ConcurrentStudentService concurrent = new ConcurrentStudentService(dir.resolve("students.dat"),
+                    dir.resolve("students.log"));
+            concurrent.addStudent(new Student(7, "Asha", "Physics"));
+            concurrent.addStudent(new Student(8, "Ravi", "Maths"));
+            concurrent.deleteStudent(7);
+            concurrent.flush();
+            concurrent.close();
+            StudentService stored = open();
+            assertEquals(List.of(8), ids(stored.getAllStudents()));
+            stored.close();}
+        @Test
+        void testConcurrentServiceRejectsBadInputAndUseAfterClose() throws Exception {
+            ConcurrentStudentService concurrent = new ConcurrentStudentService(dir.resolve("students.dat"),
+                    dir.resolve("students.log"));
+            assertThrows(IllegalArgumentException.class, () -> concurrent.addStudent(new Student(1, null, "Maths")));
+            concurrent.addStudent(new Student(1, "Asha", "Maths"));
+            concurrent.close();
+            concurrent.close();
+            assertThrows(IllegalStateException.class, () -> concurrent.addStudent(new Student(2, "Ravi", "Maths")));
+            assertThrows(IllegalStateException.class, () -> concurrent.deleteStudent(1));
+            assertThrows(IllegalStateException.class, concurrent::flush);
+            StudentService stored = open();
+            assertEquals(List.of(1), ids(stored.getAllStudents()));
+            stored.close();}
+        @Test
+        void testSearchRanksPrefixAndTypoMatches() {
+            service.addStudent(new Student(4, "Meera Physicswala", "History"));
+            assertEquals(List.of(4, 3, 1), ids(service.search("meera phys", 3))); // Name matches count double
+            assertEquals(List.of(4), ids(service.search("physicswala", 10)));
+            assertEquals(List.of(2), ids(service.search("rav", 10))); // Unfinished word
+            assertEquals(List.of(2), ids(service.search("Mahts", 10).subList(0, 1))); // Typo
+            assertTrue(service.search("zzz", 10).isEmpty());}
+        @Test
+        void testSearchFollowsUpdatesAndDeletes() {
+            assertEquals(List.of(2), ids(service.search("maths", 10))); // Builds the index
+            service.updateStudent(2, "Ravindra", "Chemistry");
+            assertTrue(service.search("maths", 10).isEmpty());
+            assertEquals(List.of(2), ids(service.search("chem", 10)));
+            service.deleteStudent(2);
+            service.addStudent(new Student(9, "Tara", "Maths"));
+            assertTrue(service.search("ravindra", 10).isEmpty());
+            assertEquals(List.of(9), ids(service.search("maths", 10)));}
+}
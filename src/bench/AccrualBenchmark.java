@@ -0,0 +1,35 @@
+package bench;
+
+import service.AccrualEngine;
+import service.AccrualRule;
+import service.BankService;
+
+import java.nio.file.Files;
+
+/**
+ * Runs end-of-day accrual over a large number of accounts and reports accounts/sec, then
+ * repeats the same run ID to show that a resumed run skips everything already applied.
+ *
+ * Usage: {@code java bench.AccrualBenchmark [accounts] [--ledger]}
+ */
+public class AccrualBenchmark {
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        boolean withLedger = args.length > 1 && args[1].equals("--ledger");
+        try (BankService bank = withLedger
+                ? new BankService(Files.createTempDirectory("accrual-bench"), 5, false, 1_000_000)
+                : new BankService()) {
+            long start = System.nanoTime();
+            for (int i = 0; i < accounts; i++) {
+                bank.createAccount("ACC" + i, "Holder " + i, i % 5_000);
+            }
+            System.out.printf("Created %d accounts in %d ms%n", accounts, (System.nanoTime() - start) / 1_000_000);
+
+            AccrualRule rule = AccrualRule.interest(0.05 / 365).plus(AccrualRule.fee(200, 1_000_00));
+            AccrualEngine engine = new AccrualEngine(bank);
+            System.out.println("run:    " + engine.run("2026-10-18", rule));
+            System.out.println("resume: " + engine.run("2026-10-18", rule));
+            System.out.println("next:   " + engine.run("2026-10-19", rule));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package bench;
+
+import service.BankLedger;
+import service.BankService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures ledger append throughput under concurrent deposits, with and without waiting
+ * for each group commit, and the time to recover the resulting ledger.
+ *
+ * Usage: {@code java bench.LedgerBenchmark [accounts] [operationsPerThread] [threads]}
+ */
+public class LedgerBenchmark {
+    public static void main(String[] args) throws Exception {
+        int accounts = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        for (boolean waitForSync : new boolean[]{false, true}) {
+            Path dir = Files.createTempDirectory("ledger-bench");
+            run(dir, accounts, waitForSync ? operations / 20 : operations, threads, waitForSync);
+        }
+    }
+
+    private static void run(Path dir, int accounts, int operations, int threads, boolean waitForSync)
+            throws IOException, InterruptedException {
+        long start;
+        try (BankService bank = new BankService(dir, 2, waitForSync, 200_000)) {
+            for (int i = 0; i < accounts; i++) {
+                bank.createAccount("ACC" + i, "Holder " + i, 100);
+            }
+            start = System.nanoTime();
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int seed = t;
+                Thread worker = new Thread(() -> {
+                    for (int i = 0; i < operations; i++) {
+                        bank.deposit("ACC" + ((seed * 7919 + i) % accounts), 1);
+                    }
+                });
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            BankLedger.Stats stats = bank.getLedgerStats();
+            System.out.printf("waitForSync=%s: %d deposits in %.2f s = %.0f ops/s, %d syncs (%.1f events per sync)%n",
+                    waitForSync, (long) operations * threads, seconds, operations * threads / seconds,
+                    stats.getSyncs(), stats.getAppendedEvents() / (double) Math.max(1, stats.getSyncs()));
+        }
+        try (BankService recovered = new BankService(dir, 2, waitForSync, 200_000)) {
+            System.out.println("  recovery: " + recovered.getLedgerStats());
+        }
+    }
+}
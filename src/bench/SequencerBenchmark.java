@@ -0,0 +1,101 @@
+package bench;
+
+import service.BankSequencer;
+import service.BankService;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Compares the locked {@link BankService} with the {@link BankSequencer} mode on a workload
+ * where every thread deposits into one hot account and a spread of ordinary accounts.
+ * Reports throughput and per-operation latency percentiles (submit until completion).
+ *
+ * Usage: {@code java bench.SequencerBenchmark [threads] [operationsPerThread] [hotPercent]}
+ */
+public class SequencerBenchmark {
+    private static final int ACCOUNTS = 10_000;
+
+    private interface Operation {
+        void deposit(String accNo);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200_000;
+        int hotPercent = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        for (int round = 0; round < 2; round++) { // The first round warms up the JIT
+            BankService locked = newBank();
+            run("locked", threads, operations, hotPercent, accNo -> locked.deposit(accNo, 1));
+
+            BankService sequenced = newBank();
+            try (BankSequencer sequencer = new BankSequencer(sequenced)) {
+                run("sequencer (join each)", threads, operations, hotPercent,
+                        accNo -> sequencer.deposit(accNo, 1).join());
+            }
+
+            BankService pipelined = newBank();
+            try (BankSequencer sequencer = new BankSequencer(pipelined)) {
+                // Keep up to 64 commands in flight per thread; latency is then queueing + execution
+                run("sequencer (pipelined)", threads, operations, hotPercent, new Operation() {
+                    private final ThreadLocal<List<CompletableFuture<Void>>> inFlight = ThreadLocal.withInitial(ArrayList::new);
+
+                    @Override
+                    public void deposit(String accNo) {
+                        List<CompletableFuture<Void>> pending = inFlight.get();
+                        pending.add(sequencer.deposit(accNo, 1));
+                        if (pending.size() == 64) {
+                            CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+                            pending.clear();
+                        }
+                    }
+                });
+                sequencer.checkBalance("HOT").join();
+            }
+            System.out.println();
+        }
+    }
+
+    private static BankService newBank() {
+        BankService bank = new BankService();
+        bank.createAccount("HOT", "Merchant", 0);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            bank.createAccount("ACC" + i, "Holder " + i, 0);
+        }
+        return bank;
+    }
+
+    private static void run(String name, int threads, int operations, int hotPercent, Operation operation)
+            throws InterruptedException {
+        long[][] latencies = new long[threads][operations];
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            long[] own = latencies[t];
+            int seed = t;
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < operations; i++) {
+                    String accNo = (i * 31 + seed) % 100 < hotPercent ? "HOT" : "ACC" + ((i * 7919 + seed) % ACCOUNTS);
+                    long begin = System.nanoTime();
+                    operation.deposit(accNo);
+                    own[i] = System.nanoTime() - begin;
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        System.out.printf("%-24s %,12.0f ops/s   p50 %6.1f us   p99 %8.1f us   p99.9 %8.1f us%n", name,
+                all.length / seconds, percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, (long) (sorted.length * p))] / 1000.0;
+    }
+}
@@ -0,0 +1,85 @@
+package bench;
+
+import service.ShardedBankService;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how a {@link ShardedBankService} scales with the number of shards. Each client
+ * thread mixes deposits and withdrawals with transfers between random accounts.
+ *
+ * Usage: {@code java bench.ShardBenchmark [maxShards] [threads] [operationsPerThread]} starts
+ * 1, 2, 4 ... maxShards in-process shards. To measure separate JVMs, start each shard with
+ * {@code java service.BankShardServer <port>} and pass {@code --connect port1,port2,...} instead.
+ */
+public class ShardBenchmark {
+    private static final int ACCOUNTS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 1 && args[0].equals("--connect")) {
+            List<InetSocketAddress> shards = new ArrayList<>();
+            for (String port : args[1].split(",")) {
+                shards.add(new InetSocketAddress("127.0.0.1", Integer.parseInt(port)));
+            }
+            try (ShardedBankService bank = new ShardedBankService(shards)) {
+                run(bank, 16, 20_000);
+            }
+            return;
+        }
+        int maxShards = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        for (int shards = 1; shards <= maxShards; shards *= 2) {
+            try (ShardedBankService bank = ShardedBankService.startLocal(shards, null)) {
+                run(bank, threads, operations);
+            }
+        }
+    }
+
+    private static void run(ShardedBankService bank, int threads, int operations) throws InterruptedException {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            bank.createAccount("ACC" + i, "Holder " + i, 1_000);
+        }
+        long[] crossShard = new long[threads];
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int seed = t;
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < operations; i++) {
+                    String from = "ACC" + ((i * 7919 + seed * 104729) % ACCOUNTS);
+                    String to = "ACC" + ((i * 6007 + seed * 15485863 + 1) % ACCOUNTS);
+                    try {
+                        if (i % 5 == 0) {
+                            if (bank.shardOf(from) != bank.shardOf(to)) {
+                                crossShard[seed]++;
+                            }
+                            bank.transfer(from, to, 1);
+                        } else if (i % 2 == 0) {
+                            bank.deposit(from, 1);
+                        } else {
+                            bank.withdraw(from, 1);
+                        }
+                    } catch (IllegalArgumentException ignored) {
+                        // Insufficient balance or same account; still a completed request
+                    }
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long total = (long) threads * operations;
+        long cross = 0;
+        for (long count : crossShard) {
+            cross += count;
+        }
+        System.out.printf("%d shard(s): %,.0f ops/s (%d ops, %d cross-shard transfers)%n",
+                bank.shardCount(), total / seconds, total, cross);
+    }
+}
@@ -0,0 +1,138 @@
+package bench;
+
+import model.Student;
+import service.ConcurrentStudentService;
+import service.StudentService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mixed read/write load on a shared roster: reader threads look students up and, every
+ * {@code SCAN_EVERY} lookups, walk the whole roster (a table refresh or report); one writer
+ * thread keeps enrolling and renaming students. Compares {@link ConcurrentStudentService}
+ * with a {@link StudentService} shared behind a lock, which is what it takes to share it safely,
+ * and reports the slowest single write, which a locked scan holds up.
+ *
+ * Usage: {@code java bench.StudentConcurrencyBenchmark [readers] [students] [seconds]}
+ */
+public class StudentConcurrencyBenchmark {
+    private static final int SCAN_EVERY = 10_000;
+
+    private interface Roster {
+        boolean lookup(int id);
+
+        int scan();
+
+        void add(Student student);
+
+        void rename(int id, String name);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int readers = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int students = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        for (int round = 0; round < 2; round++) { // The first round warms up the JIT
+            StudentService plain = new StudentService();
+            Object lock = new Object();
+            run("locked StudentService", readers, students, seconds, new Roster() {
+                public boolean lookup(int id) {
+                    synchronized (lock) {
+                        return plain.getStudentById(id).isPresent();
+                    }
+                }
+
+                public int scan() {
+                    synchronized (lock) {
+                        return plain.getAllStudents().size();
+                    }
+                }
+
+                public void add(Student student) {
+                    synchronized (lock) {
+                        plain.addStudent(student);
+                    }
+                }
+
+                public void rename(int id, String name) {
+                    synchronized (lock) {
+                        plain.updateStudent(id, name, "Physics");
+                    }
+                }
+            });
+
+            ConcurrentStudentService concurrent = new ConcurrentStudentService();
+            run("ConcurrentStudentService", readers, students, seconds, new Roster() {
+                public boolean lookup(int id) {
+                    return concurrent.getStudentById(id).isPresent();
+                }
+
+                public int scan() {
+                    int[] count = {0};
+                    concurrent.snapshot().forEachStudent(student -> count[0]++);
+                    return count[0];
+                }
+
+                public void add(Student student) {
+                    concurrent.addStudent(student);
+                }
+
+                public void rename(int id, String name) {
+                    concurrent.updateStudent(id, name, "Physics");
+                }
+            });
+            System.out.println();
+        }
+    }
+
+    private static void run(String name, int readers, int students, int seconds, Roster roster)
+            throws InterruptedException {
+        for (int i = 0; i < students; i++) {
+            roster.add(new Student(i, "Student " + i, "Physics"));
+        }
+        AtomicBoolean stop = new AtomicBoolean();
+        LongAdder reads = new LongAdder();
+        LongAdder scans = new LongAdder();
+        LongAdder writes = new LongAdder();
+        AtomicLong slowestWrite = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < readers; r++) {
+            int seed = r;
+            threads.add(new Thread(() -> {
+                for (int i = 0; !stop.get(); i++) {
+                    roster.lookup((i * 7919 + seed) % students);
+                    reads.increment();
+                    if (i % SCAN_EVERY == 0) {
+                        roster.scan();
+                        scans.increment();
+                    }
+                }
+            }));
+        }
+        threads.add(new Thread(() -> {
+            for (int i = 0; !stop.get(); i++) {
+                long start = System.nanoTime();
+                if (i % 2 == 0) {
+                    roster.add(new Student(students + i, "New " + i, "Maths"));
+                } else {
+                    roster.rename(i % students, "Renamed " + i);
+                }
+                slowestWrite.accumulateAndGet(System.nanoTime() - start, Math::max);
+                writes.increment();
+            }
+        }));
+        threads.forEach(Thread::start);
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        System.out.printf("%-26s %,12.0f lookups/s %,8.1f scans/s %,10.0f writes/s, slowest write %.1f ms%n", name,
+                reads.sum() / (double) seconds, scans.sum() / (double) seconds, writes.sum() / (double) seconds,
+                slowestWrite.get() / 1e6);
+    }
+}
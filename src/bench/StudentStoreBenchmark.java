@@ -0,0 +1,56 @@
+package bench;
+
+import model.Student;
+import service.StudentService;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cold start of a persisted roster: writes a snapshot of N students, then reopens it and
+ * reports how long until the first lookup is answered and until the whole roster is loaded.
+ *
+ * Usage: {@code java bench.StudentStoreBenchmark [students]}
+ */
+public class StudentStoreBenchmark {
+    private static final String[] COURSES = {"Physics", "Maths", "Chemistry", "Biology", "History", "Economics"};
+
+    public static void main(String[] args) throws Exception {
+        int students = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path dir = Files.createTempDirectory("student-bench");
+        Path dataFile = dir.resolve("students.dat");
+        Path logFile = dir.resolve("students.log");
+
+        List<Student> roster = new ArrayList<>(students);
+        for (int i = 0; i < students; i++) {
+            roster.add(new Student(i, "Student " + i, COURSES[i % COURSES.length]));
+        }
+        long start = System.nanoTime();
+        try (StudentService service = new StudentService(dataFile, logFile)) {
+            service.addStudents(roster);
+            for (int i = 0; i < 10_000; i++) {
+                service.updateStudent(i * 7 % students, "Renamed " + i, COURSES[i % COURSES.length]);
+            }
+            service.flush();
+        }
+        System.out.printf("Wrote %d students (%d MB) in %d ms%n", students, Files.size(dataFile) >> 20,
+                (System.nanoTime() - start) / 1_000_000);
+        roster = null;
+
+        for (int round = 1; round <= 3; round++) {
+            start = System.nanoTime();
+            StudentService service = new StudentService(dataFile, logFile);
+            boolean found = service.getStudentById(students / 2).isPresent();
+            long firstLookup = System.nanoTime() - start;
+            boolean servedEarly = !service.isLoaded();
+            service.awaitLoaded();
+            long fullLoad = System.nanoTime() - start;
+            System.out.printf("round %d: first lookup after %.2f ms (%s, %s), full roster of %d after %d ms%n", round,
+                    firstLookup / 1e6, found ? "found" : "missing", servedEarly ? "from the snapshot" : "from memory",
+                    service.size(), fullLoad / 1_000_000);
+            service.close();
+        }
+    }
+}
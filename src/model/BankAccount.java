@@ -1,33 +1,353 @@
 package model;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+/**
+ * Balances are held as a long number of cents. Each operation records a primitive
+ * entry in a {@link TransactionLog}; history text is only produced when asked for.
+ */
 public class BankAccount {
     private final String accountNumber;
     private final String accountHolder;
-    private double balance;
-    private final List<String> transactions = new ArrayList<>();
+    // Written only while holding lock; volatile so balance reads need no lock
+    private volatile long balanceCents;
+    private final TransactionLog transactions = new TransactionLog();
+    private final ReentrantLock lock = new ReentrantLock();
+    private String lastAccrualRun; // ID of the latest end-of-day run applied to this account
     public BankAccount(String accountNumber, String accountHolder, double openingBalance) {
+        this(accountNumber, accountHolder, toCents(openingBalance), System.currentTimeMillis());}
+    public BankAccount(String accountNumber, String accountHolder, long openingBalanceCents, long openedAtMillis) {
+        this(accountNumber, accountHolder, openingBalanceCents, openedAtMillis, 0);}
+    /**
+     * Recovery: an account restored from a snapshot after {@code historyCount} history entries,
+     * which live in its archive (see {@link #reopenHistory}). With at most one entry the history
+     * starts over with the opening entry, which is then the only one.
+     */
+    public BankAccount(String accountNumber, String accountHolder, long balanceCents, long openedAtMillis,
+                       long historyCount) {
         this.accountNumber = accountNumber;
         this.accountHolder = accountHolder;
-        this.balance = openingBalance;
-        transactions.add("Account opened with balance: " + openingBalance);}
-    public void deposit(double amount) {
-        if (amount > 0) {
-            balance += amount;
-            transactions.add("Deposited: " + amount);
+        this.balanceCents = balanceCents;
+        if (historyCount <= 1) {
+            transactions.append(TransactionLog.OPENED, balanceCents, openedAtMillis, null);
         } else {
-            throw new IllegalArgumentException("Deposit amount must be positive."); }    }
+            transactions.resumeAt(historyCount);
+        }}
+    /** Converts an amount in currency units to cents, rounding to the nearest cent. */
+    public static long toCents(double amount) {
+        return Math.round(amount * 100);
+    }
+    public void deposit(double amount) {
+        if (amount <= 0) throw new IllegalArgumentException("Deposit amount must be positive.");
+        depositCents(toCents(amount));
+    }
+    public void depositCents(long amountCents) {
+        depositCents(amountCents, null);
+    }
+    /** {@code beforeApply} runs under the account lock once the deposit is validated, e.g. to journal it. */
+    public void depositCents(long amountCents, Runnable beforeApply) {
+        if (amountCents <= 0) throw new IllegalArgumentException("Deposit amount must be positive.");
+        lock.lock();
+        try {
+            if (beforeApply != null) beforeApply.run();
+            balanceCents += amountCents;
+            transactions.append(TransactionLog.DEPOSIT, amountCents, System.currentTimeMillis(), null);
+        } finally {
+            lock.unlock();
+        }
+    }
     public void withdraw(double amount) {
         if (amount <= 0) throw new IllegalArgumentException("Withdrawal amount must be positive.");
-        if (amount > balance) throw new IllegalArgumentException("Insufficient balance.");
-        balance -= amount;
-        transactions.add("Withdrawn: " + amount);
+        withdrawCents(toCents(amount));
+    }
+    public void withdrawCents(long amountCents) {
+        withdrawCents(amountCents, null);
+    }
+    public void withdrawCents(long amountCents, Runnable beforeApply) {
+        if (amountCents <= 0) throw new IllegalArgumentException("Withdrawal amount must be positive.");
+        lock.lock();
+        try {
+            if (amountCents > balanceCents) throw new IllegalArgumentException("Insufficient balance.");
+            if (beforeApply != null) beforeApply.run();
+            balanceCents -= amountCents;
+            transactions.append(TransactionLog.WITHDRAWAL, amountCents, System.currentTimeMillis(), null);
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Moves money between two accounts atomically. Both locks are taken in account-number
+     * order, so concurrent transfers in opposite directions cannot deadlock.
+     */
+    public static void transfer(BankAccount from, BankAccount to, double amount) {
+        if (amount <= 0) throw new IllegalArgumentException("Transfer amount must be positive.");
+        transferCents(from, to, toCents(amount));
+    }
+    public static void transferCents(BankAccount from, BankAccount to, long amountCents) {
+        transferCents(from, to, amountCents, null);
+    }
+    public static void transferCents(BankAccount from, BankAccount to, long amountCents, Runnable beforeApply) {
+        if (amountCents <= 0) throw new IllegalArgumentException("Transfer amount must be positive.");
+        if (from == to) throw new IllegalArgumentException("Cannot transfer to the same account.");
+        BankAccount first = from.accountNumber.compareTo(to.accountNumber) < 0 ? from : to;
+        BankAccount second = first == from ? to : from;
+        first.lock.lock();
+        try {
+            second.lock.lock();
+            try {
+                if (amountCents > from.balanceCents) throw new IllegalArgumentException("Insufficient balance.");
+                if (beforeApply != null) beforeApply.run();
+                long now = System.currentTimeMillis();
+                from.balanceCents -= amountCents;
+                to.balanceCents += amountCents;
+                from.transactions.append(TransactionLog.TRANSFER_OUT, amountCents, now, to.accountNumber);
+                to.transactions.append(TransactionLog.TRANSFER_IN, amountCents, now, from.accountNumber);
+            } finally {
+                second.lock.unlock();
+            }
+        } finally {
+            first.lock.unlock();
+        }
+    }
+    /**
+     * Debit leg of a transfer whose other account lives elsewhere (e.g. on another shard).
+     * Same checks as {@link #transferCents}; recorded as "Transferred to ...".
+     */
+    public void sendCents(String toAccountNumber, long amountCents, Runnable beforeApply) {
+        if (amountCents <= 0) throw new IllegalArgumentException("Transfer amount must be positive.");
+        lock.lock();
+        try {
+            if (amountCents > balanceCents) throw new IllegalArgumentException("Insufficient balance.");
+            if (beforeApply != null) beforeApply.run();
+            balanceCents -= amountCents;
+            transactions.append(TransactionLog.TRANSFER_OUT, amountCents, System.currentTimeMillis(), toAccountNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+    /** Credit leg of a transfer from an account that lives elsewhere; recorded as "Received from ...". */
+    public void receiveCents(String fromAccountNumber, long amountCents, Runnable beforeApply) {
+        if (amountCents <= 0) throw new IllegalArgumentException("Transfer amount must be positive.");
+        lock.lock();
+        try {
+            if (beforeApply != null) beforeApply.run();
+            balanceCents += amountCents;
+            transactions.append(TransactionLog.TRANSFER_IN, amountCents, System.currentTimeMillis(), fromAccountNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Reverses the debit leg of a transfer to another shard that was aborted before it was
+     * credited there; recorded as "Transfer to ... cancelled" rather than as a deposit.
+     */
+    public void cancelSendCents(String toAccountNumber, long amountCents, Runnable beforeApply) {
+        if (amountCents <= 0) throw new IllegalArgumentException("Transfer amount must be positive.");
+        lock.lock();
+        try {
+            if (beforeApply != null) beforeApply.run();
+            balanceCents += amountCents;
+            transactions.append(TransactionLog.TRANSFER_CANCELLED, amountCents, System.currentTimeMillis(),
+                    toAccountNumber);
+        } finally {
+            lock.unlock();
+        }
     }
+    /**
+     * Applies a run of deposits and withdrawals under a single lock acquisition. Operation
+     * {@code ops[k]} for {@code from <= k < to} indexes {@code types} and {@code amountsCents};
+     * its {@code errors} slot is set to null on success or to the usual validation message.
+     */
+    public void applyBatch(byte[] types, long[] amountsCents, int[] ops, int from, int to, String[] errors,
+                           IntConsumer beforeApply) {
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            for (int k = from; k < to; k++) {
+                int op = ops[k];
+                long amountCents = amountsCents[op];
+                boolean deposit = types[op] == TransactionLog.DEPOSIT;
+                if (amountCents <= 0) {
+                    errors[op] = deposit ? "Deposit amount must be positive." : "Withdrawal amount must be positive.";
+                    continue;
+                }
+                if (!deposit && amountCents > balanceCents) {
+                    errors[op] = "Insufficient balance.";
+                    continue;
+                }
+                if (beforeApply != null) beforeApply.accept(op);
+                balanceCents += deposit ? amountCents : -amountCents;
+                transactions.append(deposit ? TransactionLog.DEPOSIT : TransactionLog.WITHDRAWAL, amountCents, now, null);
+                errors[op] = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    /** Returned by {@link #accrue} when the run, or a later one, was already applied to this account. */
+    public static final long ALREADY_ACCRUED = Long.MIN_VALUE;
+    /**
+     * Applies one end-of-day run: a positive adjustment is credited as interest, a negative one
+     * charged as a fee, capped at the balance so a fee never overdraws (and never credits a
+     * negative balance). Run IDs must increase in string order, e.g. ISO business dates: a run
+     * at or before the latest one applied to this account is skipped, which makes resuming an
+     * interrupted run safe even after a later run completed. Returns the signed amount applied,
+     * or {@link #ALREADY_ACCRUED}. {@code beforeApply} receives that amount, also when it is 0,
+     * so the run can be journaled either way.
+     */
+    public long accrue(String runId, long adjustmentCents, LongConsumer beforeApply) {
+        lock.lock();
+        try {
+            if (lastAccrualRun != null && runId.compareTo(lastAccrualRun) <= 0) return ALREADY_ACCRUED;
+            long applied = adjustmentCents >= 0 ? adjustmentCents
+                    : -Math.min(-adjustmentCents, Math.max(0, balanceCents));
+            if (beforeApply != null) beforeApply.accept(applied);
+            if (applied != 0) {
+                balanceCents += applied;
+                transactions.append(applied > 0 ? TransactionLog.INTEREST : TransactionLog.FEE, Math.abs(applied),
+                        System.currentTimeMillis(), null);
+            }
+            lastAccrualRun = runId;
+            return applied;
+        } finally {
+            lock.unlock();
+        }
+    }
+    public String getLastAccrualRun() {
+        lock.lock();
+        try {
+            return lastAccrualRun;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /** Restores the last accrual run from a ledger snapshot; only for recovery. */
+    public void restoreAccrualRun(String runId) {
+        lock.lock();
+        try {
+            lastAccrualRun = runId;
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Re-applies a recorded operation without validating it. Only for rebuilding state from
+     * a ledger at startup, where every recorded operation is known to have succeeded.
+     * For INTEREST and FEE entries {@code counterparty} is the accrual run ID; with a zero
+     * amount they only mark the run as applied and add no history entry.
+     */
+    public void applyRecorded(byte type, long amountCents, long timestampMillis, String counterparty) {
+        lock.lock();
+        try {
+            if ((type == TransactionLog.INTEREST || type == TransactionLog.FEE) && amountCents == 0) {
+                lastAccrualRun = counterparty;
+                return;
+            }
+            if (type == TransactionLog.DEPOSIT || type == TransactionLog.TRANSFER_IN || type == TransactionLog.INTEREST
+                    || type == TransactionLog.TRANSFER_CANCELLED) {
+                balanceCents += amountCents;
+            } else if (type == TransactionLog.WITHDRAWAL || type == TransactionLog.TRANSFER_OUT
+                    || type == TransactionLog.FEE) {
+                balanceCents -= amountCents;
+            }
+            if (type == TransactionLog.INTEREST || type == TransactionLog.FEE) {
+                lastAccrualRun = counterparty;
+                counterparty = null;
+            }
+            transactions.append(type, amountCents, timestampMillis, counterparty);
+        } finally {
+            lock.unlock();
+        }
+    }
+    /** Never blocks: the balance is a single volatile long, so this read is atomic on its own. */
     public double getBalance() {
-        return balance;
+        return balanceCents / 100.0;
+    }
+    public long getBalanceCents() {
+        return balanceCents;
     }
+    /**
+     * Renders the whole history as text, archived entries included. For long-lived accounts
+     * prefer {@link #getTransactions} or {@link #getTransactionsBetween}, which read one page.
+     */
     public List<String> getTransactionHistory() {
-        return transactions;
+        List<String> history = new ArrayList<>();
+        for (Transaction transaction : getTransactions(0, Integer.MAX_VALUE)) {
+            history.add(transaction.toString());
+        }
+        return history;
+    }
+    /** Up to {@code limit} entries starting at sequence number {@code fromSeq} (0 is the opening entry). */
+    public List<Transaction> getTransactions(long fromSeq, int limit) {
+        TransactionLog.Page page;
+        lock.lock();
+        try {
+            page = transactions.page(fromSeq, limit);
+        } finally {
+            lock.unlock();
+        }
+        return page.read(); // Archived entries are read from disk outside the lock
+    }
+    /** Up to {@code limit} entries with {@code fromMillis <= timestamp < toMillis}, oldest first. */
+    public List<Transaction> getTransactionsBetween(long fromMillis, long toMillis, int limit) {
+        TransactionLog.Page page;
+        lock.lock();
+        try {
+            page = transactions.pageBetween(fromMillis, toMillis, limit);
+        } finally {
+            lock.unlock();
+        }
+        return page.read();
+    }
+    public long getTransactionCount() {
+        lock.lock();
+        try {
+            return transactions.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+    /** Keeps only about {@code window} recent entries in memory and spills older ones to {@code file}. */
+    public void archiveHistory(Path file, int window) {
+        lock.lock();
+        try {
+            transactions.archiveTo(file, window);
+        } finally {
+            lock.unlock();
+        }
+    }
+    /**
+     * Like {@link #archiveHistory}, but keeps what {@code file} holds from an earlier run; entries
+     * replayed afterwards that it already holds are only counted. See {@link TransactionLog#reopenArchive}.
+     */
+    public void reopenHistory(Path file, int window) {
+        lock.lock();
+        try {
+            transactions.reopenArchive(file, window);
+        } finally {
+            lock.unlock();
+        }
+    }
+    /** After recovery: drops archived entries whose operations the ledger lost in a crash. */
+    public void trimHistory() {
+        lock.lock();
+        try {
+            transactions.trimArchive();
+        } finally {
+            lock.unlock();
+        }
+    }
+    /** Writes the history entries that are only in memory to the archive, keeping them in memory too. */
+    public void flushHistory() {
+        lock.lock();
+        try {
+            transactions.flushArchive();
+        } finally {
+            lock.unlock();
+        }
     }
     public String getAccountNumber() {
         return accountNumber;
@@ -36,4 +356,3 @@ public class BankAccount {
         return accountHolder;
     }
 }
-
@@ -0,0 +1,46 @@
+package model;
+
+/** One entry of an account's transaction history, identified by its per-account sequence number. */
+public class Transaction {
+    private final long sequence;
+    private final byte type;
+    private final long amountCents;
+    private final long timestamp;
+    private final String counterparty;
+
+    public Transaction(long sequence, byte type, long amountCents, long timestamp, String counterparty) {
+        this.sequence = sequence;
+        this.type = type;
+        this.amountCents = amountCents;
+        this.timestamp = timestamp;
+        this.counterparty = counterparty;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /** One of the {@link TransactionLog} type constants. */
+    public byte getType() {
+        return type;
+    }
+
+    public long getAmountCents() {
+        return amountCents;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /** The other account of a transfer, otherwise null. */
+    public String getCounterparty() {
+        return counterparty;
+    }
+
+    /** Same text as the transaction history, e.g. "Deposited: 500.0". */
+    @Override
+    public String toString() {
+        return TransactionLog.describe(type, amountCents, counterparty);
+    }
+}
@@ -0,0 +1,543 @@
+package model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Transaction history of one account, stored as parallel primitive arrays.
+ * Appending writes a few array slots and allocates nothing (apart from the occasional
+ * doubling of capacity); the human-readable text is only built when asked for.
+ * Entries are numbered from 0 (the opening entry) in the order they were appended.
+ *
+ * Without an archive the whole history stays in memory. After {@link #archiveTo} only a
+ * window of recent entries is kept: whenever it fills up, its older half is appended to the
+ * archive file as one chunk, and {@link #flushArchive} appends whatever is not archived yet
+ * while keeping it in memory. Chunks are checksummed records that carry the sequence number
+ * of their first entry, so the archive survives restarts ({@link #reopenArchive}), a sequence
+ * number is found by binary search over the chunks, and the first timestamp of every chunk is
+ * kept for time lookups. Reading a page only touches the chunks that overlap it, and does so
+ * in {@link Page#read()}, outside the owner's lock.
+ * Not thread-safe: the owning account serializes access.
+ */
+public class TransactionLog {
+    public static final byte OPENED = 0;
+    public static final byte DEPOSIT = 1;
+    public static final byte WITHDRAWAL = 2;
+    public static final byte TRANSFER_OUT = 3;
+    public static final byte TRANSFER_IN = 4;
+    public static final byte INTEREST = 5;
+    public static final byte FEE = 6;
+    public static final byte TRANSFER_CANCELLED = 7; // Refund of a cross-shard transfer that was aborted
+
+    // Chunk record: int length, int crc32 of the rest, long firstSeq, int count, long firstTimestamp, entries
+    private static final int CHUNK_HEADER = 4 + 4 + 8 + 4 + 8;
+
+    private byte[] types = new byte[16];
+    private long[] amounts = new long[16];
+    private long[] timestamps = new long[16];
+    private String[] counterparties = new String[16]; // Only set for transfers and their cancellations
+    private int size;       // Entries held in memory
+    private long firstSeq;  // Sequence number of the oldest entry in memory
+
+    private Path archive;
+    private boolean archiveFailed;
+    private int chunkSize;
+    private long[] chunkFirstSeqs = new long[8];
+    private long[] chunkOffsets = new long[8];
+    private long[] chunkFirstTimestamps = new long[8];
+    private int chunkCount;
+    private long archiveLength;
+    private long archivedEnd; // Sequence number after the last archived entry
+
+    /**
+     * A page being read: the in-memory part was copied when it was created, the archived part
+     * is read by {@link #read()}. Archived chunks never change once written, so that needs no lock.
+     */
+    public static final class Page {
+        private final Path archive; // Null if no archived entry is needed
+        private final long[] chunkFirstSeqs;
+        private final long[] chunkOffsets;
+        private final int chunkCount;
+        private final long archiveEnd; // First sequence number held in memory
+        private final long fromSeq;
+        private final long fromMillis;
+        private final long toMillis;
+        private final int limit;
+        private final List<Transaction> fromMemory;
+
+        Page(Path archive, long[] chunkFirstSeqs, long[] chunkOffsets, int chunkCount, long archiveEnd, long fromSeq,
+             long fromMillis, long toMillis, int limit, List<Transaction> fromMemory) {
+            this.archive = archive;
+            this.chunkFirstSeqs = chunkFirstSeqs;
+            this.chunkOffsets = chunkOffsets;
+            this.chunkCount = chunkCount;
+            this.archiveEnd = archiveEnd;
+            this.fromSeq = fromSeq;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.limit = limit;
+            this.fromMemory = fromMemory;
+        }
+
+        public List<Transaction> read() {
+            if (archive == null) {
+                return fromMemory;
+            }
+            List<Transaction> page = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+                for (int chunk = Math.max(0, lastChunkAtOrBefore(chunkFirstSeqs, chunkCount, fromSeq));
+                     chunk < chunkCount && chunkFirstSeqs[chunk] < archiveEnd; chunk++) {
+                    for (Transaction entry : readChunk(channel, chunkOffsets[chunk])) {
+                        if (entry.getSequence() >= archiveEnd) {
+                            break; // Flushed while still in memory; read from there below
+                        }
+                        if (page.size() == limit || entry.getTimestamp() >= toMillis) {
+                            return page; // Memory entries come later, so they are past the end too
+                        }
+                        if (entry.getSequence() >= fromSeq && entry.getTimestamp() >= fromMillis) {
+                            page.add(entry);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read transaction archive " + archive, e);
+            }
+            for (Transaction entry : fromMemory) {
+                if (page.size() == limit) {
+                    break;
+                }
+                page.add(entry);
+            }
+            return page;
+        }
+    }
+
+    public void append(byte type, long amountCents, long timestampMillis, String counterparty) {
+        if (firstSeq + size < archivedEnd) {
+            firstSeq++; // Replayed at recovery, and the reopened archive already holds it
+            return;
+        }
+        store(type, amountCents, timestampMillis, counterparty);
+        if (archive != null && !archiveFailed && size >= 2 * chunkSize) {
+            spill();
+        }
+    }
+
+    /**
+     * Numbers the next entry {@code seq}, for a restored account whose earlier entries are
+     * only in its archive. The history must still be empty.
+     */
+    public void resumeAt(long seq) {
+        if (size != 0 || firstSeq != 0) {
+            throw new IllegalStateException("History already has entries.");
+        }
+        firstSeq = seq;
+    }
+
+    /**
+     * Keeps at most about {@code window} entries in memory from now on and moves older ones to
+     * {@code file}, which is replaced. Can only be set once.
+     */
+    public void archiveTo(Path file, int window) {
+        attach(file, window);
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        spillWhileFull();
+    }
+
+    /**
+     * Like {@link #archiveTo}, but keeps the entries already in {@code file} (from an earlier
+     * run) and a torn last chunk is cut off. Entries in memory, or appended later, that the
+     * archive already holds are only counted, so a history replayed from its start or from
+     * {@link #resumeAt} lines up with the archive by sequence number.
+     */
+    public void reopenArchive(Path file, int window) {
+        attach(file, window);
+        try {
+            readIndex();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open transaction archive " + file, e);
+        }
+        int archived = (int) Math.min(size, Math.max(0, archivedEnd - firstSeq));
+        if (archived > 0) {
+            drop(archived);
+        }
+        if (firstSeq > archivedEnd) {
+            System.err.println("History archive " + file.getFileName() + " ends at entry " + archivedEnd
+                    + ", entries up to " + firstSeq + " are lost.");
+        }
+        spillWhileFull();
+    }
+
+    /**
+     * Cuts archived entries past the end of the history, i.e. written before a crash that lost
+     * the operations they record. Call once the history has been replayed after {@link #reopenArchive}.
+     */
+    public void trimArchive() {
+        long end = firstSeq + size;
+        if (archive == null || archivedEnd <= end) {
+            return;
+        }
+        // Everything replayed was already archived, so memory is empty and starts at 'end'
+        int keep = chunkCount;
+        while (keep > 0 && chunkFirstSeqs[keep - 1] >= end) {
+            keep--;
+        }
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            archivedEnd = 0;
+            if (keep > 0) {
+                List<Transaction> entries = readChunk(channel, chunkOffsets[keep - 1]);
+                long chunkEnd = chunkFirstSeqs[keep - 1] + entries.size();
+                if (chunkEnd > end) {
+                    // The chunk runs past the end: its valid entries go back into memory instead
+                    keep--;
+                    firstSeq = chunkFirstSeqs[keep];
+                    for (Transaction entry : entries) {
+                        if (entry.getSequence() < end) {
+                            store(entry.getType(), entry.getAmountCents(), entry.getTimestamp(),
+                                    entry.getCounterparty());
+                        }
+                    }
+                    archivedEnd = firstSeq;
+                } else {
+                    archivedEnd = chunkEnd;
+                }
+            }
+            archiveLength = keep < chunkCount ? chunkOffsets[keep] : archiveLength;
+            channel.truncate(archiveLength);
+            chunkCount = keep;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not trim transaction archive " + archive, e);
+        }
+    }
+
+    /** Appends the entries that are only in memory to the archive as one chunk, and keeps them. */
+    public void flushArchive() {
+        if (archive != null && !archiveFailed) {
+            writeChunk(unarchived(), size);
+        }
+    }
+
+    /** Total number of entries, archived ones included. */
+    public long size() {
+        return firstSeq + size;
+    }
+
+    /** Number of entries that live only in the archive file. */
+    public long getArchivedCount() {
+        return firstSeq;
+    }
+
+    /** Up to {@code limit} entries starting at sequence number {@code fromSeq}, oldest first. */
+    public List<Transaction> read(long fromSeq, int limit) {
+        return page(fromSeq, limit).read();
+    }
+
+    /** Like {@link #read}, but only copies the in-memory entries; call {@link Page#read()} to finish. */
+    public Page page(long fromSeq, int limit) {
+        return page(Math.max(0, fromSeq), Long.MIN_VALUE, Long.MAX_VALUE, limit);
+    }
+
+    /**
+     * Up to {@code limit} entries with {@code fromMillis <= timestamp < toMillis}, oldest first.
+     * Relies on timestamps never decreasing along the history.
+     */
+    public List<Transaction> readBetween(long fromMillis, long toMillis, int limit) {
+        return pageBetween(fromMillis, toMillis, limit).read();
+    }
+
+    /** Like {@link #readBetween}, but only copies the in-memory entries; call {@link Page#read()} to finish. */
+    public Page pageBetween(long fromMillis, long toMillis, int limit) {
+        if (chunkCount == 0 || (size > 0 && timestamps[0] < fromMillis)) {
+            return page(firstSeq, fromMillis, toMillis, limit);
+        }
+        // The answer may be archived: start at the last chunk starting before fromMillis
+        int low = 0;
+        int high = chunkCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunkFirstTimestamps[mid] < fromMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return page(low == 0 ? 0 : chunkFirstSeqs[low - 1], fromMillis, toMillis, limit);
+    }
+
+    static String describe(byte type, long amountCents, String counterparty) {
+        double amount = amountCents / 100.0;
+        switch (type) {
+            case OPENED:
+                return "Account opened with balance: " + amount;
+            case DEPOSIT:
+                return "Deposited: " + amount;
+            case WITHDRAWAL:
+                return "Withdrawn: " + amount;
+            case TRANSFER_OUT:
+                return "Transferred to " + counterparty + ": " + amount;
+            case TRANSFER_IN:
+                return "Received from " + counterparty + ": " + amount;
+            case INTEREST:
+                return "Interest credited: " + amount;
+            case FEE:
+                return "Fee charged: " + amount;
+            case TRANSFER_CANCELLED:
+                return "Transfer to " + counterparty + " cancelled: " + amount;
+            default:
+                return "Unknown transaction: " + amount;
+        }
+    }
+
+    private Page page(long fromSeq, long fromMillis, long toMillis, int limit) {
+        // In-memory entries from fromSeq and fromMillis on (timestamps are sorted)
+        int low = (int) Math.min(size, Math.max(0, fromSeq - firstSeq));
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < fromMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        List<Transaction> fromMemory = new ArrayList<>(Math.min(limit, size - low));
+        for (int i = low; i < size && fromMemory.size() < limit && timestamps[i] < toMillis; i++) {
+            fromMemory.add(new Transaction(firstSeq + i, types[i], amounts[i], timestamps[i], counterparties[i]));
+        }
+        boolean fromArchive = archive != null && chunkCount > 0 && fromSeq < firstSeq;
+        return new Page(fromArchive ? archive : null, chunkFirstSeqs, chunkOffsets, chunkCount, firstSeq, fromSeq,
+                fromMillis, toMillis, limit, fromMemory);
+    }
+
+    private void attach(Path file, int window) {
+        if (archive != null) {
+            throw new IllegalStateException("History is already archived to " + archive);
+        }
+        if (window < 2) {
+            throw new IllegalArgumentException("History window must hold at least 2 entries.");
+        }
+        archive = file;
+        chunkSize = window / 2;
+    }
+
+    private void store(byte type, long amountCents, long timestampMillis, String counterparty) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+            counterparties = Arrays.copyOf(counterparties, capacity);
+        }
+        types[size] = type;
+        amounts[size] = amountCents;
+        timestamps[size] = timestampMillis;
+        counterparties[size] = counterparty;
+        size++;
+    }
+
+    private void spillWhileFull() {
+        while (!archiveFailed && size >= 2 * chunkSize) {
+            spill();
+        }
+    }
+
+    // Moves the oldest chunkSize entries out of memory, archiving those that are not yet
+    private void spill() {
+        int from = unarchived();
+        if (from < chunkSize && !writeChunk(from, chunkSize)) {
+            return; // Nothing is lost: the history just keeps growing in memory
+        }
+        drop(chunkSize);
+    }
+
+    // Index of the first in-memory entry the archive does not hold
+    private int unarchived() {
+        return (int) Math.min(size, Math.max(0, archivedEnd - firstSeq));
+    }
+
+    private boolean writeChunk(int from, int to) {
+        if (from >= to) {
+            return true;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(CHUNK_HEADER + (to - from) * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0); // Length and checksum are filled in below
+            out.writeInt(0);
+            out.writeLong(firstSeq + from);
+            out.writeInt(to - from);
+            out.writeLong(timestamps[from]);
+            for (int i = from; i < to; i++) {
+                out.writeByte(types[i]);
+                out.writeLong(amounts[i]);
+                out.writeLong(timestamps[i]);
+                out.writeUTF(counterparties[i] == null ? "" : counterparties[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // In-memory stream
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, record.limit() - 8);
+        record.putInt(0, record.limit() - 8).putInt(4, (int) crc.getValue());
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            for (long position = archiveLength; record.hasRemaining(); ) {
+                position += channel.write(record, position);
+            }
+        } catch (IOException e) {
+            System.err.println("Error archiving transaction history, keeping it in memory: " + e.getMessage());
+            archiveFailed = true;
+            return false;
+        }
+        addChunk(firstSeq + from, archiveLength, timestamps[from]);
+        archiveLength += record.limit();
+        archivedEnd = firstSeq + to;
+        return true;
+    }
+
+    private void addChunk(long first, long offset, long firstTimestamp) {
+        if (chunkCount == chunkOffsets.length) {
+            chunkFirstSeqs = Arrays.copyOf(chunkFirstSeqs, chunkCount * 2);
+            chunkOffsets = Arrays.copyOf(chunkOffsets, chunkCount * 2);
+            chunkFirstTimestamps = Arrays.copyOf(chunkFirstTimestamps, chunkCount * 2);
+        }
+        chunkFirstSeqs[chunkCount] = first;
+        chunkOffsets[chunkCount] = offset;
+        chunkFirstTimestamps[chunkCount] = firstTimestamp;
+        chunkCount++;
+    }
+
+    private void drop(int count) {
+        int remaining = size - count;
+        System.arraycopy(types, count, types, 0, remaining);
+        System.arraycopy(amounts, count, amounts, 0, remaining);
+        System.arraycopy(timestamps, count, timestamps, 0, remaining);
+        System.arraycopy(counterparties, count, counterparties, 0, remaining);
+        Arrays.fill(counterparties, remaining, size, null);
+        size = remaining;
+        firstSeq += count;
+    }
+
+    // Rebuilds the chunk index from the headers. Only the last chunk can be torn (chunks are only
+    // appended), so only its checksum is checked here; readChunk checks the others when read.
+    private void readIndex() throws IOException {
+        if (!Files.exists(archive)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER);
+            long offset = 0;
+            while (offset < fileSize) {
+                header.clear();
+                if (!readFully(channel, header, offset)) {
+                    break;
+                }
+                int length = header.getInt(0);
+                long first = header.getLong(8);
+                int count = header.getInt(16);
+                long end = offset + 8 + (long) length;
+                if (length < CHUNK_HEADER - 8 || count <= 0 || first < archivedEnd || end > fileSize
+                        || (end == fileSize && !isIntact(channel, offset))) {
+                    break;
+                }
+                addChunk(first, offset, header.getLong(20));
+                archivedEnd = first + count;
+                offset = end;
+            }
+            if (offset < fileSize) {
+                System.err.println("History archive " + archive.getFileName() + ": cutting bad chunk at offset "
+                        + offset);
+                channel.truncate(offset);
+            }
+            archiveLength = offset;
+        }
+    }
+
+    private static boolean isIntact(FileChannel channel, long offset) throws IOException {
+        try {
+            readChunk(channel, offset);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Reads and checks one chunk record; its entries carry their sequence numbers
+    private static List<Transaction> readChunk(FileChannel channel, long offset) throws IOException {
+        ByteBuffer prefix = ByteBuffer.allocate(8);
+        if (!readFully(channel, prefix, offset)) {
+            throw new EOFException("Truncated history chunk at offset " + offset);
+        }
+        int length = prefix.getInt(0);
+        if (length < CHUNK_HEADER - 8 || length > 64 << 20) {
+            throw new IOException("Bad history chunk length " + length + " at offset " + offset);
+        }
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        if (!readFully(channel, payload, offset + 8)) {
+            throw new EOFException("Truncated history chunk at offset " + offset);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, length);
+        if ((int) crc.getValue() != prefix.getInt(4)) {
+            throw new IOException("Corrupt history chunk at offset " + offset);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+        long seq = in.readLong();
+        int count = in.readInt();
+        in.readLong(); // First timestamp, only needed by the index
+        List<Transaction> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++, seq++) {
+            byte type = in.readByte();
+            long amount = in.readLong();
+            long timestamp = in.readLong();
+            String counterparty = in.readUTF();
+            entries.add(new Transaction(seq, type, amount, timestamp, counterparty.isEmpty() ? null : counterparty));
+        }
+        return entries;
+    }
+
+    // False if the file ends before the buffer is full
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    // Last chunk whose first entry is at or before seq, or -1
+    private static int lastChunkAtOrBefore(long[] chunkFirstSeqs, int chunkCount, long seq) {
+        int low = 0;
+        int high = chunkCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunkFirstSeqs[mid] <= seq) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+}
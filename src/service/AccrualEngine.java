@@ -0,0 +1,167 @@
+package service;
+
+import model.BankAccount;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * End-of-day interest and fee processing over every account of a {@link BankService}.
+ *
+ * A run first takes the cut-off balances into a primitive column, computes every account's
+ * adjustment from that column in parallel, then applies the adjustments in parallel chunks
+ * (one lock acquisition per account). Interest and fees go into the history as their own
+ * entry types rather than deposits.
+ *
+ * Each account remembers the latest run ID applied to it, atomically with the balance change,
+ * and with a ledger that ID is journaled alongside the adjustment (even a zero one). That
+ * per-account marker is the checkpoint: re-running the same run ID after a crash or failure
+ * (on the recovered service) applies only the accounts that were not done yet. Run IDs must
+ * increase in string order (ISO business dates do), and an account skips any run at or before
+ * its marker, so resuming an old run after a newer one completed changes nothing.
+ */
+public class AccrualEngine {
+    // Accounts per apply task
+    private static final int CHUNK = 8192;
+
+    /** Totals of one run. */
+    public static class Report {
+        private final int accounts;
+        private final int credited;
+        private final int charged;
+        private final int alreadyApplied;
+        private final long interestCents;
+        private final long feeCents;
+        private final long elapsedMillis;
+
+        Report(int accounts, long[] totals, long elapsedMillis) {
+            this.accounts = accounts;
+            this.credited = (int) totals[0];
+            this.charged = (int) totals[1];
+            this.alreadyApplied = (int) totals[2];
+            this.interestCents = totals[3];
+            this.feeCents = totals[4];
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getAccounts() {
+            return accounts;
+        }
+
+        public int getCredited() {
+            return credited;
+        }
+
+        public int getCharged() {
+            return charged;
+        }
+
+        /** Accounts skipped because an earlier attempt of this run, or a later run, already did them. */
+        public int getAlreadyApplied() {
+            return alreadyApplied;
+        }
+
+        public long getInterestCents() {
+            return interestCents;
+        }
+
+        public long getFeeCents() {
+            return feeCents;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public double getAccountsPerSecond() {
+            return accounts * 1000.0 / Math.max(1, elapsedMillis);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d accounts in %d ms (%.0f accounts/s): %d credited %.2f, %d charged %.2f, "
+                    + "%d already applied", accounts, elapsedMillis, getAccountsPerSecond(), credited,
+                    interestCents / 100.0, charged, feeCents / 100.0, alreadyApplied);
+        }
+    }
+
+    private final BankService bank;
+    private final ForkJoinPool pool;
+
+    public AccrualEngine(BankService bank) {
+        this(bank, ForkJoinPool.commonPool());
+    }
+
+    public AccrualEngine(BankService bank, ForkJoinPool pool) {
+        this.bank = bank;
+        this.pool = pool;
+    }
+
+    /**
+     * Applies {@code rule} to every account once for {@code runId} (e.g. the ISO business date).
+     * Accounts already processed under this or a later run ID are skipped, so an interrupted run is
+     * resumed simply by calling this again. Returns once every adjustment is durable.
+     */
+    public Report run(String runId, AccrualRule rule) {
+        long start = System.nanoTime();
+        BankAccount[] accounts = bank.accountsSnapshot();
+        long[] adjustments = new long[accounts.length];
+        // Column of cut-off balances, then the rule over that column
+        pool.submit(() -> {
+            Arrays.parallelSetAll(adjustments, i -> accounts[i].getBalanceCents());
+            Arrays.parallelSetAll(adjustments, i -> rule.adjustmentCents(adjustments[i]));
+        }).join();
+        long[] totals = pool.invoke(new ApplyTask(runId, accounts, adjustments, 0, accounts.length));
+        bank.syncLedger();
+        return new Report(accounts.length, totals, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // Totals: {credited, charged, alreadyApplied, interestCents, feeCents}
+    private class ApplyTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final String runId;
+        private final BankAccount[] accounts;
+        private final long[] adjustments;
+        private final int from;
+        private final int to;
+
+        ApplyTask(String runId, BankAccount[] accounts, long[] adjustments, int from, int to) {
+            this.runId = runId;
+            this.accounts = accounts;
+            this.adjustments = adjustments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= CHUNK) {
+                long[] totals = new long[5];
+                for (int i = from; i < to; i++) {
+                    long applied = bank.accrue(accounts[i], runId, adjustments[i]);
+                    if (applied == BankAccount.ALREADY_ACCRUED) {
+                        totals[2]++;
+                    } else if (applied > 0) {
+                        totals[0]++;
+                        totals[3] += applied;
+                    } else if (applied < 0) {
+                        totals[1]++;
+                        totals[4] -= applied;
+                    }
+                }
+                return totals;
+            }
+            int mid = (from + to) >>> 1;
+            ApplyTask left = new ApplyTask(runId, accounts, adjustments, from, mid);
+            left.fork();
+            long[] totals = new ApplyTask(runId, accounts, adjustments, mid, to).compute();
+            long[] leftTotals = left.join();
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] += leftTotals[i];
+            }
+            return totals;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package service;
+
+/**
+ * End-of-day adjustment for one account, computed from its balance at the cut-off:
+ * positive cents are credited as interest, negative cents charged as a fee.
+ */
+@FunctionalInterface
+public interface AccrualRule {
+    long adjustmentCents(long balanceCents);
+
+    /** Interest of {@code rate} per run (e.g. 0.05 / 365 for 5% a year, daily), rounded down to the cent. */
+    static AccrualRule interest(double rate) {
+        return balance -> balance > 0 ? (long) Math.floor(balance * rate) : 0;
+    }
+
+    /** A fixed fee, waived for balances of at least {@code waivedFromCents}. */
+    static AccrualRule fee(long feeCents, long waivedFromCents) {
+        return balance -> balance >= waivedFromCents ? 0 : -feeCents;
+    }
+
+    /** Both rules, evaluated on the same cut-off balance and netted into one adjustment. */
+    default AccrualRule plus(AccrualRule other) {
+        return balance -> adjustmentCents(balance) + other.adjustmentCents(balance);
+    }
+}
@@ -0,0 +1,82 @@
+package service;
+
+import model.BankAccount;
+import model.TransactionLog;
+
+import java.util.Arrays;
+
+/**
+ * A batch of deposits and withdrawals for {@link BankService#process(BankBatch)}.
+ * Operations are stored as parallel arrays in the order they were added.
+ */
+public class BankBatch {
+    /** Per-operation outcome of a processed batch; nothing is thrown for individual failures. */
+    public static class Result {
+        private final String[] errors;
+        private final int failed;
+
+        Result(String[] errors) {
+            this.errors = errors;
+            int count = 0;
+            for (String error : errors) {
+                if (error != null) {
+                    count++;
+                }
+            }
+            this.failed = count;
+        }
+
+        public int size() {
+            return errors.length;
+        }
+
+        public boolean isSuccess(int index) {
+            return errors[index] == null;
+        }
+
+        /** Why operation {@code index} was rejected, e.g. "Insufficient balance.", or null if it succeeded. */
+        public String getError(int index) {
+            return errors[index];
+        }
+
+        public int getSucceeded() {
+            return errors.length - failed;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+    }
+
+    byte[] types = new byte[16];
+    String[] accounts = new String[16];
+    long[] amountsCents = new long[16];
+    int size;
+
+    public BankBatch deposit(String accNo, double amount) {
+        return add(TransactionLog.DEPOSIT, accNo, amount);
+    }
+
+    public BankBatch withdraw(String accNo, double amount) {
+        return add(TransactionLog.WITHDRAWAL, accNo, amount);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private BankBatch add(byte type, String accNo, double amount) {
+        if (size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            accounts = Arrays.copyOf(accounts, capacity);
+            amountsCents = Arrays.copyOf(amountsCents, capacity);
+        }
+        types[size] = type;
+        accounts[size] = accNo;
+        // Non-positive amounts are kept and rejected per operation when the batch runs
+        amountsCents[size] = amount <= 0 ? 0 : BankAccount.toCents(amount);
+        size++;
+        return this;
+    }
+}
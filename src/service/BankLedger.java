@@ -0,0 +1,635 @@
+package service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Durable, append-only event log for {@link BankService}.
+ *
+ * Events go to numbered segment files ({@code ledger-000001.log}, ...) as checksummed records:
+ * {@code int length, int crc32, payload}. Appends are buffered in memory and a sync thread
+ * writes and fsyncs them as one batch every sync interval (group commit). When a segment
+ * fills up it is sealed and, in the background, folded together with the previous snapshot
+ * into a new balance snapshot, after which the sealed segments are deleted. Recovery reads
+ * the snapshot and replays only the segments written after it.
+ *
+ * Recorded events are facts ("500 was withdrawn"), not commands, so replay applies them
+ * without validation and in any interleaving across accounts reaches the same balances.
+ */
+public class BankLedger implements Closeable {
+    public static final byte CREATE = 1;
+    public static final byte DEPOSIT = 2;
+    public static final byte WITHDRAW = 3;
+    public static final byte TRANSFER = 4;
+    public static final byte SEND = 5;    // Debit leg of a transfer to another shard
+    public static final byte RECEIVE = 6; // Credit leg of a transfer from another shard
+    public static final byte INTEREST = 7; // End-of-day credit, 0 if none; counterparty holds the accrual run ID
+    public static final byte FEE = 8;      // End-of-day charge; counterparty holds the accrual run ID
+    public static final byte CANCEL = 9;   // Refund of an aborted SEND; counterparty is the SEND's target
+
+    private static final int SNAPSHOT_MAGIC = 0x53464253; // "SFBS"
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+
+    /**
+     * One recovered ledger event. Snapshot balances are delivered as CREATE events whose
+     * counterparty is the account's last accrual run (empty if none) and whose historyCount is
+     * the number of history entries the account had at the snapshot.
+     */
+    public static class Event {
+        public final byte type;
+        public final String account;
+        public final String counterparty; // Other account of a transfer, otherwise empty
+        public final String holder;       // Only for CREATE, otherwise empty
+        public final long amountCents;
+        public final long timestamp;
+        public final long historyCount;   // Only for snapshot CREATEs, otherwise 0
+
+        Event(byte type, String account, String counterparty, String holder, long amountCents, long timestamp,
+              long historyCount) {
+            this.type = type;
+            this.account = account;
+            this.counterparty = counterparty;
+            this.holder = holder;
+            this.amountCents = amountCents;
+            this.timestamp = timestamp;
+            this.historyCount = historyCount;
+        }
+    }
+
+    /** Recovery and throughput figures for monitoring. */
+    public static class Stats {
+        private final long recoveryMillis;
+        private final int snapshotAccounts;
+        private final long replayedEvents;
+        private final long appendedEvents;
+        private final long syncs;
+        private final double appendsPerSecond;
+
+        Stats(long recoveryMillis, int snapshotAccounts, long replayedEvents, long appendedEvents, long syncs,
+              double appendsPerSecond) {
+            this.recoveryMillis = recoveryMillis;
+            this.snapshotAccounts = snapshotAccounts;
+            this.replayedEvents = replayedEvents;
+            this.appendedEvents = appendedEvents;
+            this.syncs = syncs;
+            this.appendsPerSecond = appendsPerSecond;
+        }
+
+        public long getRecoveryMillis() {
+            return recoveryMillis;
+        }
+
+        public int getSnapshotAccounts() {
+            return snapshotAccounts;
+        }
+
+        public long getReplayedEvents() {
+            return replayedEvents;
+        }
+
+        public long getAppendedEvents() {
+            return appendedEvents;
+        }
+
+        /** Number of group commits (fsyncs) so far. */
+        public long getSyncs() {
+            return syncs;
+        }
+
+        /** Events appended per second since the ledger was opened. */
+        public double getAppendsPerSecond() {
+            return appendsPerSecond;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("recovery %d ms (%d snapshot accounts, %d events replayed), %d events appended, "
+                    + "%d syncs, %.0f appends/s", recoveryMillis, snapshotAccounts, replayedEvents, appendedEvents,
+                    syncs, appendsPerSecond);
+        }
+    }
+
+    private final Path dir;
+    private final long syncIntervalMillis;
+    private final boolean waitForSync;
+    private final int segmentMaxEvents;
+
+    // Guarded by this
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private int pendingEvents;
+    private long appendedSeq;
+    private long durableSeq;
+    private long syncs;
+    private boolean closed;
+    private IOException failure;
+
+    // Owned by the sync thread
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+    private FileChannel segment;
+    private int segmentIndex;
+    private int segmentEvents;
+
+    private volatile Runnable beforeCompaction;
+    private final Thread syncer;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "ledger-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final long recoveryMillis;
+    private final int snapshotAccounts;
+    private final long replayedEvents;
+    private final long openedAtNanos;
+
+    /**
+     * Syncs every 5 ms without waiting: appends return before they are on disk, so a crash can
+     * lose the last sync interval of appends.
+     */
+    public BankLedger(Path dir, Consumer<Event> recovery) throws IOException {
+        this(dir, recovery, 5, false, 100_000);
+    }
+
+    /**
+     * Opens the ledger in {@code dir}, replaying the snapshot and log tail into {@code recovery}.
+     *
+     * @param syncIntervalMillis how long appends are gathered before one write + fsync
+     * @param waitForSync        if true, {@link #append} returns only once its batch is on disk
+     * @param segmentMaxEvents   events per segment before it is sealed and folded into the snapshot
+     */
+    public BankLedger(Path dir, Consumer<Event> recovery, long syncIntervalMillis, boolean waitForSync,
+                      int segmentMaxEvents) throws IOException {
+        this.dir = dir;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.waitForSync = waitForSync;
+        this.segmentMaxEvents = segmentMaxEvents;
+        Files.createDirectories(dir);
+
+        long start = System.nanoTime();
+        Map<String, long[]> snapshotBalances = new LinkedHashMap<>();
+        Map<String, String[]> snapshotNames = new LinkedHashMap<>();
+        int covered = readSnapshot(snapshotBalances, snapshotNames);
+        for (Map.Entry<String, long[]> entry : snapshotBalances.entrySet()) {
+            long[] value = entry.getValue();
+            String[] names = snapshotNames.get(entry.getKey());
+            recovery.accept(new Event(CREATE, entry.getKey(), names[1], names[0], value[0], value[1], value[2]));
+        }
+        long replayed = 0;
+        int last = covered;
+        for (int index : segmentIndexes()) {
+            if (index <= covered) {
+                Files.deleteIfExists(segmentPath(index)); // Already folded into the snapshot
+                continue;
+            }
+            replayed += readSegment(index, recovery, true);
+            last = index;
+        }
+        recoveryMillis = (System.nanoTime() - start) / 1_000_000;
+        snapshotAccounts = snapshotBalances.size();
+        replayedEvents = replayed;
+        System.out.println("Ledger recovered " + snapshotAccounts + " accounts from snapshot and replayed "
+                + replayed + " events in " + recoveryMillis + " ms.");
+
+        // Never append to a segment that may end in a torn record; start a fresh one
+        segmentIndex = last + 1;
+        segment = openSegment(segmentIndex);
+        openedAtNanos = System.nanoTime();
+        syncer = new Thread(this::syncLoop, "ledger-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+    }
+
+    /**
+     * Buffers one event and returns its sequence number. It reaches disk with the next group
+     * commit, at most one sync interval later; pass the number to {@link #await} to wait for that.
+     * Appending is cheap enough to do while holding account locks, which keeps the log order of
+     * operations on one account the same as the order they were applied in.
+     */
+    public long append(byte type, String account, String counterparty, String holder, long amountCents)
+            throws IOException {
+        byte[] accountBytes = account.getBytes(StandardCharsets.UTF_8);
+        byte[] counterpartyBytes = counterparty == null ? new byte[0] : counterparty.getBytes(StandardCharsets.UTF_8);
+        byte[] holderBytes = holder == null ? new byte[0] : holder.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = 1 + 8 + 8 + 2 + accountBytes.length + 2 + counterpartyBytes.length + 2 + holderBytes.length;
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Ledger is closed.");
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            ensureCapacity(4 + 4 + payloadLength);
+            int start = pending.position();
+            pending.position(start + 8); // Length and checksum are filled in below
+            pending.put(type).putLong(System.currentTimeMillis()).putLong(amountCents);
+            putBytes(pending, accountBytes);
+            putBytes(pending, counterpartyBytes);
+            putBytes(pending, holderBytes);
+            CRC32 crc = new CRC32();
+            crc.update(pending.array(), start + 8, payloadLength);
+            pending.putInt(start, payloadLength).putInt(start + 4, (int) crc.getValue());
+            pendingEvents++;
+            return ++appendedSeq;
+        }
+    }
+
+    /** Waits for event {@code seq} to be on disk if the ledger was opened with {@code waitForSync}. */
+    public void await(long seq) throws IOException {
+        if (waitForSync) {
+            awaitDurable(seq);
+        }
+    }
+
+    /** Blocks until everything appended so far is on disk. */
+    public void sync() throws IOException {
+        long seq;
+        synchronized (this) {
+            seq = appendedSeq;
+        }
+        awaitDurable(seq);
+    }
+
+    /**
+     * Runs {@code action} on the compaction thread before sealed segments are folded into the
+     * snapshot and deleted, e.g. to persist state derived from their events elsewhere first.
+     */
+    public void beforeCompaction(Runnable action) {
+        beforeCompaction = action;
+    }
+
+    public synchronized Stats getStats() {
+        double seconds = (System.nanoTime() - openedAtNanos) / 1e9;
+        return new Stats(recoveryMillis, snapshotAccounts, replayedEvents, appendedSeq, syncs,
+                seconds > 0 ? appendedSeq / seconds : 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeBatch(); // Whatever arrived after the last sync
+        segment.close();
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    private synchronized void awaitDurable(long seq) throws IOException {
+        while (durableSeq < seq && failure == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for ledger sync", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void syncLoop() {
+        while (true) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                try {
+                    wait(syncIntervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+            }
+            writeBatch();
+        }
+    }
+
+    // Group commit: one write and one fsync for everything appended since the last batch
+    private void writeBatch() {
+        ByteBuffer batch;
+        int events;
+        long upTo;
+        synchronized (this) {
+            if (pendingEvents == 0) {
+                return;
+            }
+            batch = pending;
+            pending = spare;
+            events = pendingEvents;
+            pendingEvents = 0;
+            upTo = appendedSeq;
+        }
+        try {
+            batch.flip();
+            while (batch.hasRemaining()) {
+                segment.write(batch);
+            }
+            segment.force(false);
+            batch.clear();
+            spare = batch;
+            synchronized (this) {
+                durableSeq = upTo;
+                syncs++;
+                notifyAll();
+            }
+            segmentEvents += events;
+            if (segmentEvents >= segmentMaxEvents) {
+                rotate();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing bank ledger: " + e.getMessage());
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+        }
+    }
+
+    private void rotate() throws IOException {
+        segment.close();
+        int sealed = segmentIndex;
+        segmentIndex++;
+        segmentEvents = 0;
+        segment = openSegment(segmentIndex);
+        compactor.submit(() -> {
+            try {
+                Runnable action = beforeCompaction;
+                if (action != null) {
+                    action.run();
+                }
+                compact(sealed);
+            } catch (IOException e) {
+                System.err.println("Error compacting bank ledger: " + e.getMessage());
+            }
+        });
+    }
+
+    // Folds the previous snapshot and every sealed segment up to 'sealed' into a new snapshot
+    private void compact(int sealed) throws IOException {
+        Map<String, long[]> balances = new LinkedHashMap<>();
+        Map<String, String[]> names = new LinkedHashMap<>();
+        int covered = readSnapshot(balances, names);
+        for (int index : segmentIndexes()) {
+            if (index > covered && index <= sealed) {
+                readSegment(index, event -> fold(event, balances, names), false);
+            }
+        }
+        writeSnapshot(sealed, balances, names);
+        for (int index : segmentIndexes()) {
+            if (index <= sealed) {
+                Files.deleteIfExists(segmentPath(index));
+            }
+        }
+    }
+
+    // balances holds {balance, openedAt, history entries} and names {holder, last accrual run} per account.
+    // The entry counts follow BankAccount: one per balance change, plus the opening entry.
+    private static void fold(Event event, Map<String, long[]> balances, Map<String, String[]> names) {
+        switch (event.type) {
+            case CREATE:
+                balances.put(event.account, new long[]{event.amountCents, event.timestamp, 1});
+                names.put(event.account, new String[]{event.holder, event.counterparty});
+                break;
+            case INTEREST:
+            case FEE:
+                if (event.amountCents != 0) {
+                    adjust(balances, event.account, event.type == INTEREST ? event.amountCents : -event.amountCents);
+                }
+                String[] accountNames = names.get(event.account);
+                if (accountNames != null) {
+                    accountNames[1] = event.counterparty;
+                }
+                break;
+            case DEPOSIT:
+                adjust(balances, event.account, event.amountCents);
+                break;
+            case WITHDRAW:
+            case SEND:
+                adjust(balances, event.account, -event.amountCents);
+                break;
+            case RECEIVE:
+            case CANCEL:
+                adjust(balances, event.account, event.amountCents);
+                break;
+            case TRANSFER:
+                adjust(balances, event.account, -event.amountCents);
+                adjust(balances, event.counterparty, event.amountCents);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void adjust(Map<String, long[]> balances, String account, long delta) {
+        long[] value = balances.get(account);
+        if (value != null) {
+            value[0] += delta;
+            value[2]++;
+        }
+    }
+
+    // Snapshot layout: int magic, int coveredSegment, int count, then per account:
+    // UTF account, UTF holder, long balanceCents, long openedAt, UTF lastAccrualRun, long historyEntries
+    private int readSnapshot(Map<String, long[]> balances, Map<String, String[]> names) throws IOException {
+        Path file = dir.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int magic = in.readInt();
+            if (magic != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a bank ledger snapshot: " + file);
+            }
+            int covered = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String account = in.readUTF();
+                String holder = in.readUTF();
+                long balanceCents = in.readLong();
+                long openedAt = in.readLong();
+                names.put(account, new String[]{holder, in.readUTF()});
+                balances.put(account, new long[]{balanceCents, openedAt, in.readLong()});
+            }
+            return covered;
+        }
+    }
+
+    private void writeSnapshot(int covered, Map<String, long[]> balances, Map<String, String[]> names)
+            throws IOException {
+        Path file = dir.resolve(SNAPSHOT_FILE);
+        Path temp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                     Channels.newOutputStream(channel)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(covered);
+            out.writeInt(balances.size());
+            for (Map.Entry<String, long[]> entry : balances.entrySet()) {
+                String[] accountNames = names.get(entry.getKey());
+                out.writeUTF(entry.getKey());
+                out.writeUTF(accountNames[0]);
+                out.writeLong(entry.getValue()[0]);
+                out.writeLong(entry.getValue()[1]);
+                out.writeUTF(accountNames[1]);
+                out.writeLong(entry.getValue()[2]);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads a segment until its end or its first bad record. With {@code repair}, a torn or
+     * corrupt tail (crash in the middle of a write) is cut off so later recoveries agree.
+     */
+    private long readSegment(int index, Consumer<Event> consumer, boolean repair) throws IOException {
+        Path file = segmentPath(index);
+        long valid = 0;
+        long count = 0;
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 64 * 1024))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] payload;
+                try {
+                    int checksum = in.readInt();
+                    if (length < 0 || length > 1 << 20) {
+                        throw new IOException("bad record length " + length);
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        throw new IOException("checksum mismatch");
+                    }
+                } catch (IOException e) {
+                    System.err.println("Ledger " + file.getFileName() + ": ignoring bad record at offset " + valid
+                            + " (" + (e instanceof EOFException ? "truncated record" : e.getMessage()) + ")");
+                    break;
+                }
+                consumer.accept(decode(payload));
+                valid += 8 + length;
+                count++;
+            }
+        }
+        if (repair && valid == 0) {
+            Files.delete(file); // Nothing usable, e.g. a segment opened by a run that wrote nothing
+        } else if (repair && Files.size(file) > valid) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        return count;
+    }
+
+    private static Event decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        byte type = buffer.get();
+        long timestamp = buffer.getLong();
+        long amountCents = buffer.getLong();
+        String account = getString(buffer);
+        String counterparty = getString(buffer);
+        String holder = getString(buffer);
+        return new Event(type, account, counterparty, holder, amountCents, timestamp, 0);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        buffer.putShort((short) bytes.length).put(bytes);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (pending.remaining() < needed) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + needed));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+    }
+
+    private FileChannel openSegment(int index) throws IOException {
+        return FileChannel.open(segmentPath(index), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private Path segmentPath(int index) {
+        return dir.resolve(String.format("ledger-%06d.log", index));
+    }
+
+    private List<Integer> segmentIndexes() throws IOException {
+        List<Integer> indexes = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "ledger-*.log")) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                indexes.add(Integer.parseInt(name.substring("ledger-".length(), name.length() - ".log".length())));
+            }
+        }
+        Collections.sort(indexes);
+        return indexes;
+    }
+}
@@ -0,0 +1,249 @@
+package service;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optional execution mode for {@link BankService}: commands are published to a pre-allocated
+ * ring buffer and applied, in publication order, by one business-logic thread. Callers get a
+ * future back instead of blocking on account locks, and a hot account no longer has many
+ * threads fighting over its lock; every account lock is taken by a single thread only.
+ *
+ * Producers claim a slot with one atomic increment, fill the pre-allocated command in place
+ * and publish it by writing the slot's sequence number. When the ring is full they wait for
+ * the business thread to catch up. Commands run against the wrapped service, so results and
+ * error messages are the same as for direct calls. Use a ledger without waitForSync here: the
+ * business thread would otherwise wait for every fsync in turn.
+ *
+ * After {@link #close()}, or if the business thread dies, every command it will not run
+ * (including ones published concurrently with the shutdown) completes exceptionally.
+ */
+public class BankSequencer implements Closeable {
+    private static final byte CREATE = 0;
+    private static final byte DEPOSIT = 1;
+    private static final byte WITHDRAW = 2;
+    private static final byte TRANSFER = 3;
+    private static final byte BALANCE = 4;
+    private static final byte STOP = 5;
+
+    // Mutable and reused; only the producer that claimed the slot and then the business thread touch it
+    private static final class Command {
+        byte type;
+        String account;
+        String other; // Transfer target or account holder
+        double amount;
+        CompletableFuture<Object> result;
+    }
+
+    private final BankService bank;
+    private final Command[] ring;
+    private final int mask;
+    private final AtomicLongArray published; // Sequence number last published in each slot
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong(); // Next sequence the business thread will run
+    private final Thread worker;
+    private volatile boolean closed;
+    private volatile Throwable stopped; // Set by the business thread before it fails the commands left behind
+    private volatile boolean drained;   // Every command claimed before the business thread stopped has been failed
+
+    public BankSequencer(BankService bank) {
+        this(bank, 1 << 16);
+    }
+
+    /** @param capacity ring size, rounded up to a power of two */
+    public BankSequencer(BankService bank, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.bank = bank;
+        this.ring = new Command[size];
+        this.mask = size - 1;
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            ring[i] = new Command();
+            published.set(i, -1);
+        }
+        worker = new Thread(this::run, "bank-sequencer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public CompletableFuture<Void> createAccount(String accNo, String holder, double openingBalance) {
+        return publish(CREATE, accNo, holder, openingBalance);
+    }
+
+    public CompletableFuture<Void> deposit(String accNo, double amount) {
+        return publish(DEPOSIT, accNo, null, amount);
+    }
+
+    public CompletableFuture<Void> withdraw(String accNo, double amount) {
+        return publish(WITHDRAW, accNo, null, amount);
+    }
+
+    public CompletableFuture<Void> transfer(String fromAccNo, String toAccNo, double amount) {
+        return publish(TRANSFER, fromAccNo, toAccNo, amount);
+    }
+
+    /** Balance after every command published before this one. */
+    public CompletableFuture<Double> checkBalance(String accNo) {
+        return publish(BALANCE, accNo, null, 0);
+    }
+
+    /** Runs every command already published, then stops the business thread. */
+    @Override
+    public void close() {
+        closed = true;
+        claim(STOP, null, null, 0);
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> publish(byte type, String account, String other, double amount) {
+        Throwable failure = stopped;
+        if (failure == null && closed) {
+            failure = new IllegalStateException("Sequencer is closed.");
+        }
+        if (failure != null) {
+            return CompletableFuture.failedFuture(failure);
+        }
+        return claim(type, account, other, amount);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> claim(byte type, String account, String other, double amount) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        long seq = claimed.getAndIncrement();
+        // Wrapping onto a slot the business thread has not run yet: wait for it
+        for (int idle = 0; seq - consumed.get() >= ring.length; idle = Math.min(idle + 1, 200)) {
+            if (drained) {
+                // Stopped, and the final drain did not see this claim: nobody will ever run the slot
+                result.completeExceptionally(stopped);
+                return (CompletableFuture<T>) (CompletableFuture<?>) result;
+            }
+            idle(idle);
+        }
+        Command command = ring[(int) seq & mask];
+        command.type = type;
+        command.account = account;
+        command.other = other;
+        command.amount = amount;
+        command.result = result;
+        published.lazySet((int) seq & mask, seq); // Release: the command fields are visible first
+        // The business thread may have stopped before reaching this slot. If it had not yet stopped
+        // here, its drain reads 'claimed' afterwards and fails the command itself; either is fine.
+        Throwable failure = stopped;
+        if (failure != null) {
+            result.completeExceptionally(failure);
+        }
+        return (CompletableFuture<T>) (CompletableFuture<?>) result;
+    }
+
+    private void run() {
+        long next = 0;
+        int idle = 0;
+        while (true) {
+            int slot = (int) next & mask;
+            if (published.get(slot) != next) {
+                idle(idle);
+                idle = Math.min(idle + 1, 200);
+                continue;
+            }
+            idle = 0;
+            // Drain everything already published before telling producers the slots are free
+            long end = next;
+            do {
+                Command command = ring[slot];
+                CompletableFuture<Object> result = command.result;
+                byte type = command.type;
+                Object value = null;
+                Throwable failure = null;
+                Error fatal = null;
+                try {
+                    value = execute(command);
+                } catch (RuntimeException e) {
+                    failure = e;
+                } catch (Error e) {
+                    failure = e;
+                    fatal = e;
+                }
+                command.account = null;
+                command.other = null;
+                command.result = null;
+                end++;
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(value);
+                }
+                if (type == STOP || fatal != null) {
+                    consumed.set(end);
+                    stop(end, fatal == null ? new IllegalStateException("Sequencer is closed.")
+                            : new IllegalStateException("Sequencer stopped: " + fatal, fatal));
+                    if (fatal != null) {
+                        throw fatal;
+                    }
+                    return;
+                }
+                slot = (int) end & mask;
+            } while (published.get(slot) == end);
+            next = end;
+            consumed.set(end);
+        }
+    }
+
+    // Fails every command claimed so far that will never run. Producers that claim after the
+    // last read of 'claimed' below see 'stopped' once they publish and fail their own command.
+    private void stop(long next, Throwable cause) {
+        stopped = cause;
+        for (; next < claimed.get(); next++) {
+            int slot = (int) next & mask;
+            for (int idle = 0; published.get(slot) != next; idle = Math.min(idle + 1, 200)) {
+                idle(idle);
+            }
+            Command command = ring[slot];
+            CompletableFuture<Object> result = command.result;
+            command.account = null;
+            command.other = null;
+            command.result = null;
+            consumed.set(next + 1);
+            result.completeExceptionally(cause);
+        }
+        drained = true;
+    }
+
+    private Object execute(Command command) {
+        switch (command.type) {
+            case CREATE:
+                bank.createAccount(command.account, command.other, command.amount);
+                return null;
+            case DEPOSIT:
+                bank.deposit(command.account, command.amount);
+                return null;
+            case WITHDRAW:
+                bank.withdraw(command.account, command.amount);
+                return null;
+            case TRANSFER:
+                bank.transfer(command.account, command.other, command.amount);
+                return null;
+            case BALANCE:
+                return bank.checkBalance(command.account);
+            default:
+                return null;
+        }
+    }
+
+    // Spin briefly, then yield, then park: low latency under load without burning an idle core
+    private static void idle(int round) {
+        if (round < 100) {
+            Thread.onSpinWait();
+        } else if (round < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+}
@@ -1,14 +1,100 @@
 package service;
 import model.BankAccount;
+import model.Transaction;
+import model.TransactionLog;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-public class BankService {
-    private final Map<String, BankAccount> accounts = new HashMap<>();
+import java.util.OptionalDouble;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+/**
+ * Safe to call from many threads. Accounts live in a ConcurrentHashMap and each
+ * account guards its own balance, so operations on different accounts run in parallel.
+ *
+ * Constructed with a ledger directory, every successful operation is also appended to a
+ * {@link BankLedger} and the accounts are rebuilt from it on the next start. Such a service
+ * also keeps only the most recent {@link #HISTORY_WINDOW} history entries of each account in
+ * memory and spills older ones to {@code history/} inside the ledger directory. Those archives
+ * are kept across restarts and indexed by sequence number: on recovery each account reopens its
+ * archive and only ledger events past its last archived entry go back into memory, so sequence
+ * numbers keep their meaning. Before the ledger folds sealed segments into its snapshot, every
+ * account's unarchived entries are written to its archive, so compaction loses no history.
+ *
+ * Durability: opened with {@link #BankService(Path)}, the ledger syncs every 5 ms without
+ * waiting, so an operation returns once it is journaled in memory and a crash can lose the
+ * operations acknowledged in the last sync interval. Pass {@code waitForSync = true} to the
+ * other constructor to have every operation return only once it is on disk.
+ */
+public class BankService implements Closeable {
+    public static final int HISTORY_WINDOW = 4096;
+    /** Returned by {@link #balanceCentsOrMissing} for an unknown account. */
+    public static final long MISSING = Long.MIN_VALUE;
+    // Batches smaller than this, and account groups up to this size, are not split across threads
+    private static final int BATCH_TASK_OPS = 4096;
+    private static final String NOT_PROCESSED = "Not processed.";
+    // Retries are expected within minutes; a day of keys bounds memory at a few MB
+    private static final int IDEMPOTENCY_KEYS = 1 << 16;
+    private static final long IDEMPOTENCY_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+    private static final int LOCK_STRIPES = 64;
+    private final Map<String, BankAccount> accounts = new ConcurrentHashMap<>();
+    private final BankLedger ledger; // null when the service is purely in-memory
+    private final Path historyDir;   // null keeps full histories in memory
+    private volatile IdempotencyCache idempotency; // Created on the first keyed request
+    // Serialize creations of the same account number, so its CREATE is journaled before anyone sees it
+    private final ReentrantLock[] createLocks = newLocks(LOCK_STRIPES);
+    public BankService() {
+        this.ledger = null;
+        this.historyDir = null;
+    }
+    /** Durable, but may lose the last few ms of acknowledged operations in a crash; see above. */
+    public BankService(Path ledgerDir) throws IOException {
+        this.historyDir = prepareHistoryDir(ledgerDir);
+        this.ledger = new BankLedger(ledgerDir, this::replay);
+        afterRecovery();
+    }
+    /** See {@link BankLedger} for the meaning of the ledger settings. */
+    public BankService(Path ledgerDir, long syncIntervalMillis, boolean waitForSync, int segmentMaxEvents)
+            throws IOException {
+        this.historyDir = prepareHistoryDir(ledgerDir);
+        this.ledger = new BankLedger(ledgerDir, this::replay, syncIntervalMillis, waitForSync, segmentMaxEvents);
+        afterRecovery();
+    }
     public void createAccount(String accNo, String holder, double openingBalance) {
-        if (accounts.containsKey(accNo)) {
-            throw new IllegalArgumentException("Account already exists.");
+        long seq;
+        // Journaled before the account is published, so the CREATE precedes anything done to it.
+        // Only creations of the same stripe wait here; the map itself never runs I/O.
+        ReentrantLock lock = createLocks[(accNo.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+        lock.lock();
+        try {
+            if (accounts.containsKey(accNo)) {
+                throw new IllegalArgumentException("Account already exists.");
+            }
+            BankAccount account = withHistoryArchive(new BankAccount(accNo, holder, openingBalance), false);
+            seq = record(BankLedger.CREATE, accNo, null, holder, account.getBalanceCents());
+            accounts.put(accNo, account);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+    }
+    private static ReentrantLock[] newLocks(int count) {
+        ReentrantLock[] locks = new ReentrantLock[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new ReentrantLock();
         }
-        accounts.put(accNo, new BankAccount(accNo, holder, openingBalance));
+        return locks;
     }
     public BankAccount getAccount(String accNo) {
         BankAccount account = accounts.get(accNo);
@@ -17,17 +103,383 @@ public class BankService {
         return account;
     }
     public void deposit(String accNo, double amount) {
-        getAccount(accNo).deposit(amount);
+        if (amount <= 0) throw new IllegalArgumentException("Deposit amount must be positive.");
+        long cents = BankAccount.toCents(amount);
+        long[] seq = new long[1];
+        getAccount(accNo).depositCents(cents, journal(seq, BankLedger.DEPOSIT, accNo, null, cents));
+        awaitDurable(seq[0]);
     }
     public void withdraw(String accNo, double amount) {
-        getAccount(accNo).withdraw(amount);
+        if (amount <= 0) throw new IllegalArgumentException("Withdrawal amount must be positive.");
+        long cents = BankAccount.toCents(amount);
+        long[] seq = new long[1];
+        getAccount(accNo).withdrawCents(cents, journal(seq, BankLedger.WITHDRAW, accNo, null, cents));
+        awaitDurable(seq[0]);
+    }
+    /** Atomic: either both balances change or neither does. */
+    public void transfer(String fromAccNo, String toAccNo, double amount) {
+        if (amount <= 0) throw new IllegalArgumentException("Transfer amount must be positive.");
+        long cents = BankAccount.toCents(amount);
+        long[] seq = new long[1];
+        BankAccount.transferCents(getAccount(fromAccNo), getAccount(toAccNo), cents,
+                journal(seq, BankLedger.TRANSFER, fromAccNo, toAccNo, cents));
+        awaitDurable(seq[0]);
+    }
+    /**
+     * Deposit that is applied at most once per {@code idempotencyKey}: a retry with the same
+     * key returns (or throws) the original outcome without touching the account again. Keys
+     * are remembered in memory for a day, up to the most recent 65536 keys.
+     */
+    public void deposit(String accNo, double amount, long idempotencyKey) {
+        idempotent(idempotencyKey, IdempotencyCache.fingerprint(amount, "deposit", accNo), () -> deposit(accNo, amount));
+    }
+    /** Withdrawal that is applied at most once per {@code idempotencyKey}; see {@link #deposit(String, double, long)}. */
+    public void withdraw(String accNo, double amount, long idempotencyKey) {
+        idempotent(idempotencyKey, IdempotencyCache.fingerprint(amount, "withdraw", accNo), () -> withdraw(accNo, amount));
+    }
+    /** Transfer that is applied at most once per {@code idempotencyKey}; see {@link #deposit(String, double, long)}. */
+    public void transfer(String fromAccNo, String toAccNo, double amount, long idempotencyKey) {
+        idempotent(idempotencyKey, IdempotencyCache.fingerprint(amount, "transfer", fromAccNo, toAccNo),
+                () -> transfer(fromAccNo, toAccNo, amount));
+    }
+    public BankBatch.Result process(BankBatch batch) {
+        return process(batch, ForkJoinPool.commonPool());
+    }
+    /**
+     * Runs a batch of deposits and withdrawals in one pass and reports every operation's outcome
+     * instead of throwing. Operations are grouped by account: each account is looked up once and
+     * its operations run in batch order under one lock acquisition, with the same validation as
+     * {@link #deposit} and {@link #withdraw}. Different accounts are processed in parallel on
+     * {@code pool}. With a ledger, the whole batch shares one wait for durability.
+     */
+    public BankBatch.Result process(BankBatch batch, ForkJoinPool pool) {
+        int n = batch.size;
+        String[] errors = new String[n];
+        Arrays.fill(errors, NOT_PROCESSED);
+        // Counting sort by account keeps every group in batch order
+        Map<String, Integer> groupByAccount = new HashMap<>();
+        List<String> groupAccounts = new ArrayList<>();
+        int[] groupOfOp = new int[n];
+        int[] counts = new int[16];
+        for (int op = 0; op < n; op++) {
+            Integer group = groupByAccount.get(batch.accounts[op]);
+            if (group == null) {
+                group = groupAccounts.size();
+                groupByAccount.put(batch.accounts[op], group);
+                groupAccounts.add(batch.accounts[op]);
+                if (group == counts.length) {
+                    counts = Arrays.copyOf(counts, group * 2);
+                }
+            }
+            groupOfOp[op] = group;
+            counts[group]++;
+        }
+        int groups = groupAccounts.size();
+        int[] groupStart = new int[groups + 1];
+        for (int g = 0; g < groups; g++) {
+            groupStart[g + 1] = groupStart[g] + counts[g];
+        }
+        int[] ops = new int[n];
+        int[] next = Arrays.copyOf(groupStart, groups);
+        for (int op = 0; op < n; op++) {
+            ops[next[groupOfOp[op]]++] = op;
+        }
+        long[] seqs = ledger == null ? null : new long[n];
+        BatchTask task = new BatchTask(batch, groupAccounts.toArray(new String[0]), groupStart, ops, errors, seqs, 0, groups);
+        if (n < BATCH_TASK_OPS) {
+            task.compute();
+        } else {
+            pool.invoke(task);
+        }
+        if (seqs != null) {
+            awaitDurable(Arrays.stream(seqs).max().orElse(0));
+        }
+        return new BankBatch.Result(errors);
+    }
+    // Legs of a cross-shard transfer, driven by BankShardServer. Each leg is validated and
+    // journaled on its own shard like any other operation.
+    void sendTransfer(String fromAccNo, String toAccNo, double amount) {
+        if (amount <= 0) throw new IllegalArgumentException("Transfer amount must be positive.");
+        long cents = BankAccount.toCents(amount);
+        long[] seq = new long[1];
+        getAccount(fromAccNo).sendCents(toAccNo, cents, journal(seq, BankLedger.SEND, fromAccNo, toAccNo, cents));
+        awaitDurable(seq[0]);
+    }
+    void receiveTransfer(String toAccNo, String fromAccNo, double amount) {
+        if (amount <= 0) throw new IllegalArgumentException("Transfer amount must be positive.");
+        long cents = BankAccount.toCents(amount);
+        long[] seq = new long[1];
+        getAccount(toAccNo).receiveCents(fromAccNo, cents, journal(seq, BankLedger.RECEIVE, toAccNo, fromAccNo, cents));
+        awaitDurable(seq[0]);
+    }
+    // Refunds a sendTransfer whose cross-shard transfer was aborted
+    void cancelTransfer(String fromAccNo, String toAccNo, double amount) {
+        if (amount <= 0) throw new IllegalArgumentException("Transfer amount must be positive.");
+        long cents = BankAccount.toCents(amount);
+        long[] seq = new long[1];
+        getAccount(fromAccNo).cancelSendCents(toAccNo, cents, journal(seq, BankLedger.CANCEL, fromAccNo, toAccNo, cents));
+        awaitDurable(seq[0]);
+    }
+    // Used by AccrualEngine: every account, in no particular order
+    BankAccount[] accountsSnapshot() {
+        return accounts.values().toArray(new BankAccount[0]);
+    }
+    // Applies one account's share of an accrual run and journals it with the run ID, a zero
+    // adjustment too (as INTEREST 0), so recovery knows the run is done for the account.
+    // The caller waits for durability once per run via syncLedger().
+    long accrue(BankAccount account, String runId, long adjustmentCents) {
+        return account.accrue(runId, adjustmentCents, ledger == null ? null : amount -> record(
+                amount >= 0 ? BankLedger.INTEREST : BankLedger.FEE, account.getAccountNumber(), runId, null,
+                Math.abs(amount)));
+    }
+    // Waits until everything journaled so far is durable
+    void syncLedger() {
+        if (ledger != null) {
+            try {
+                ledger.sync();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not record operation in ledger", e);
+            }
+        }
     }
     public double checkBalance(String accNo) {
         return getAccount(accNo).getBalance();
     }
+    /**
+     * Read-only balance query for polling. It is one lock-free map lookup plus one volatile
+     * read, so it never waits for writers, and it reports an unknown account as empty
+     * instead of throwing.
+     */
+    public OptionalDouble findBalance(String accNo) {
+        BankAccount account = accounts.get(accNo);
+        return account == null ? OptionalDouble.empty() : OptionalDouble.of(account.getBalance());
+    }
+    /** Like {@link #findBalance} without allocating: the balance in cents, or {@link #MISSING}. */
+    public long balanceCentsOrMissing(String accNo) {
+        BankAccount account = accounts.get(accNo);
+        return account == null ? MISSING : account.getBalanceCents();
+    }
+    /** One page of history: up to {@code limit} entries starting at sequence number {@code fromSeq}. */
+    public List<Transaction> getTransactions(String accNo, long fromSeq, int limit) {
+        return getAccount(accNo).getTransactions(fromSeq, limit);
+    }
+    /** Up to {@code limit} entries with {@code fromMillis <= timestamp < toMillis}, oldest first. */
+    public List<Transaction> getTransactionsBetween(String accNo, long fromMillis, long toMillis, int limit) {
+        return getAccount(accNo).getTransactionsBetween(fromMillis, toMillis, limit);
+    }
+    // Printed page by page so a long history is never held in memory at once
     public void printTransactions(String accNo) {
         BankAccount acc = getAccount(accNo);
         System.out.println("Transaction history for " + acc.getAccountHolder() + ":");
-        acc.getTransactionHistory().forEach(System.out::println);
+        long next = 0;
+        List<Transaction> page;
+        do {
+            page = acc.getTransactions(next, 1000);
+            page.forEach(System.out::println);
+            next += page.size();
+        } while (page.size() == 1000);
+    }
+    /** Recovery time and append throughput of the ledger, or null without one. */
+    public BankLedger.Stats getLedgerStats() {
+        return ledger == null ? null : ledger.getStats();
+    }
+    @Override
+    public void close() throws IOException {
+        if (ledger != null) {
+            ledger.close();
+        }
+    }
+    // Runs under the account lock(s), after validation and before the balance changes,
+    // so a failed append leaves the account untouched
+    private Runnable journal(long[] seq, byte type, String accNo, String counterparty, long cents) {
+        return ledger == null ? null : () -> seq[0] = record(type, accNo, counterparty, null, cents);
+    }
+    private long record(byte type, String accNo, String counterparty, String holder, long cents) {
+        if (ledger == null) {
+            return 0;
+        }
+        try {
+            return ledger.append(type, accNo, counterparty, holder, cents);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record operation in ledger", e);
+        }
+    }
+    private void awaitDurable(long seq) {
+        if (ledger == null) {
+            return;
+        }
+        try {
+            ledger.await(seq);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not record operation in ledger", e);
+        }
+    }
+    private void idempotent(long key, long fingerprint, Runnable operation) {
+        IdempotencyCache cache = idempotency;
+        if (cache == null) {
+            synchronized (this) {
+                if (idempotency == null) {
+                    idempotency = new IdempotencyCache(IDEMPOTENCY_KEYS, IDEMPOTENCY_TTL_MILLIS);
+                }
+                cache = idempotency;
+            }
+        }
+        int previous = cache.claim(key, fingerprint);
+        if (previous == IdempotencyCache.SUCCEEDED) {
+            return;
+        }
+        if (previous != IdempotencyCache.CLAIMED) {
+            throw new IllegalArgumentException(cache.message(previous));
+        }
+        try {
+            operation.run();
+        } catch (IllegalArgumentException e) {
+            cache.complete(key, e.getMessage()); // A rejected request stays rejected on retry
+            throw e;
+        } catch (RuntimeException e) {
+            cache.release(key); // Not applied (e.g. ledger failure), so a retry may run it
+            throw e;
+        }
+        cache.complete(key, null);
+    }
+    private void processGroup(BankBatch batch, String accNo, int[] ops, int from, int to, String[] errors, long[] seqs) {
+        BankAccount account = accounts.get(accNo);
+        if (account == null) {
+            for (int k = from; k < to; k++) {
+                errors[ops[k]] = "Account not found.";
+            }
+            return;
+        }
+        IntConsumer journal = seqs == null ? null : op -> seqs[op] = record(
+                batch.types[op] == TransactionLog.DEPOSIT ? BankLedger.DEPOSIT : BankLedger.WITHDRAW,
+                accNo, null, null, batch.amountsCents[op]);
+        try {
+            account.applyBatch(batch.types, batch.amountsCents, ops, from, to, errors, journal);
+        } catch (UncheckedIOException e) {
+            // The failed operation and the rest of this group were not applied
+            for (int k = from; k < to; k++) {
+                if (errors[ops[k]] == NOT_PROCESSED) {
+                    errors[ops[k]] = "Could not record operation in ledger: " + e.getCause().getMessage();
+                }
+            }
+        }
+    }
+    // Splits the account groups until a task holds one group or at most BATCH_TASK_OPS operations
+    private class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BankBatch batch;
+        private final String[] groupAccounts;
+        private final int[] groupStart;
+        private final int[] ops;
+        private final String[] errors;
+        private final long[] seqs;
+        private final int fromGroup;
+        private final int toGroup;
+        BatchTask(BankBatch batch, String[] groupAccounts, int[] groupStart, int[] ops, String[] errors, long[] seqs,
+                  int fromGroup, int toGroup) {
+            this.batch = batch;
+            this.groupAccounts = groupAccounts;
+            this.groupStart = groupStart;
+            this.ops = ops;
+            this.errors = errors;
+            this.seqs = seqs;
+            this.fromGroup = fromGroup;
+            this.toGroup = toGroup;
+        }
+        @Override
+        protected void compute() {
+            if (toGroup - fromGroup <= 1 || groupStart[toGroup] - groupStart[fromGroup] <= BATCH_TASK_OPS) {
+                for (int g = fromGroup; g < toGroup; g++) {
+                    processGroup(batch, groupAccounts[g], ops, groupStart[g], groupStart[g + 1], errors, seqs);
+                }
+                return;
+            }
+            int mid = (fromGroup + toGroup) >>> 1;
+            invokeAll(new BatchTask(batch, groupAccounts, groupStart, ops, errors, seqs, fromGroup, mid),
+                    new BatchTask(batch, groupAccounts, groupStart, ops, errors, seqs, mid, toGroup));
+        }
+    }
+    // A new account replaces any archive left behind; a recovered one reopens its archive
+    private BankAccount withHistoryArchive(BankAccount account, boolean recovered) {
+        if (historyDir != null) {
+            StringBuilder name = new StringBuilder();
+            // Hex keeps any account number a valid file name
+            for (byte b : account.getAccountNumber().getBytes(StandardCharsets.UTF_8)) {
+                name.append(String.format("%02x", b));
+            }
+            Path file = historyDir.resolve(name + ".hist");
+            if (recovered) {
+                account.reopenHistory(file, HISTORY_WINDOW);
+            } else {
+                account.archiveHistory(file, HISTORY_WINDOW);
+            }
+        }
+        return account;
+    }
+    private static Path prepareHistoryDir(Path ledgerDir) throws IOException {
+        Path dir = ledgerDir.resolve("history");
+        Files.createDirectories(dir);
+        return dir;
+    }
+    // Archives may run ahead of a ledger that lost its last events in a crash; from now on,
+    // history is archived before the ledger compacts the events it came from
+    private void afterRecovery() {
+        for (BankAccount account : accounts.values()) {
+            account.trimHistory();
+        }
+        ledger.beforeCompaction(() -> {
+            for (BankAccount account : accounts.values()) {
+                account.flushHistory();
+            }
+        });
+    }
+    // Recorded events already passed validation once, so they are applied as-is
+    private void replay(BankLedger.Event event) {
+        switch (event.type) {
+            case BankLedger.CREATE: {
+                BankAccount account = withHistoryArchive(new BankAccount(event.account, event.holder,
+                        event.amountCents, event.timestamp, event.historyCount), true);
+                if (!event.counterparty.isEmpty()) {
+                    account.restoreAccrualRun(event.counterparty);
+                }
+                accounts.put(event.account, account);
+                break;
+            }
+            case BankLedger.INTEREST:
+                accounts.get(event.account).applyRecorded(TransactionLog.INTEREST, event.amountCents, event.timestamp,
+                        event.counterparty);
+                break;
+            case BankLedger.FEE:
+                accounts.get(event.account).applyRecorded(TransactionLog.FEE, event.amountCents, event.timestamp,
+                        event.counterparty);
+                break;
+            case BankLedger.DEPOSIT:
+                accounts.get(event.account).applyRecorded(TransactionLog.DEPOSIT, event.amountCents, event.timestamp, null);
+                break;
+            case BankLedger.WITHDRAW:
+                accounts.get(event.account).applyRecorded(TransactionLog.WITHDRAWAL, event.amountCents, event.timestamp, null);
+                break;
+            case BankLedger.SEND:
+                accounts.get(event.account).applyRecorded(TransactionLog.TRANSFER_OUT, event.amountCents, event.timestamp,
+                        event.counterparty);
+                break;
+            case BankLedger.RECEIVE:
+                accounts.get(event.account).applyRecorded(TransactionLog.TRANSFER_IN, event.amountCents, event.timestamp,
+                        event.counterparty);
+                break;
+            case BankLedger.CANCEL:
+                accounts.get(event.account).applyRecorded(TransactionLog.TRANSFER_CANCELLED, event.amountCents,
+                        event.timestamp, event.counterparty);
+                break;
+            case BankLedger.TRANSFER:
+                accounts.get(event.account).applyRecorded(TransactionLog.TRANSFER_OUT, event.amountCents, event.timestamp,
+                        event.counterparty);
+                accounts.get(event.counterparty).applyRecorded(TransactionLog.TRANSFER_IN, event.amountCents,
+                        event.timestamp, event.account);
+                break;
+            default:
+                System.err.println("Skipping unknown ledger event type " + event.type);
+        }
     }
 }
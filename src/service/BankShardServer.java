@@ -0,0 +1,261 @@
+package service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One partition of a sharded bank: a {@link BankService} with its own ledger, served over a
+ * loopback TCP socket to {@link ShardedBankService} routers. Can run inside the router's JVM
+ * or as its own process via {@link #main}.
+ *
+ * Requests are answered one at a time per connection: an op byte and its fields, answered
+ * by a status byte followed by a double result or an error message. Cross-shard transfers
+ * use two phases: PREPARE_DEBIT takes the money out of the source account (so a concurrent
+ * withdrawal cannot spend it twice), PREPARE_CREDIT checks the target account exists, and
+ * COMMIT or ABORT then finishes both sides: COMMIT credits the target, ABORT refunds the source
+ * as a cancellation of its transfer. Both are idempotent (a transaction is forgotten only once
+ * its side is applied, and an unknown ID is acknowledged), so the router may resend them until
+ * they succeed. Pending transfers live in memory only.
+ */
+public class BankShardServer implements Closeable {
+    static final byte CREATE = 1;
+    static final byte DEPOSIT = 2;
+    static final byte WITHDRAW = 3;
+    static final byte TRANSFER = 4;
+    static final byte BALANCE = 5;
+    static final byte PREPARE_DEBIT = 6;
+    static final byte PREPARE_CREDIT = 7;
+    static final byte COMMIT = 8;
+    static final byte ABORT = 9;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    // One side of a cross-shard transfer between prepare and commit/abort; its monitor keeps a
+    // resent COMMIT or ABORT from applying it twice
+    private static final class Pending {
+        final boolean debit;
+        final String account;
+        final String counterparty;
+        final double amount;
+
+        Pending(boolean debit, String account, String counterparty, double amount) {
+            this.debit = debit;
+            this.account = account;
+            this.counterparty = counterparty;
+            this.amount = amount;
+        }
+    }
+
+    private final BankService bank;
+    private final ServerSocket server;
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+
+    /** Serves a purely in-memory bank on an ephemeral loopback port. */
+    public BankShardServer() throws IOException {
+        this(new BankService(), 0);
+    }
+
+    /** Serves {@code bank} on {@code port} of the loopback interface (0 picks a free port). */
+    public BankShardServer(BankService bank, int port) throws IOException {
+        this.bank = bank;
+        this.server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        acceptor = new Thread(this::acceptLoop, "bank-shard-" + server.getLocalPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) server.getLocalSocketAddress();
+    }
+
+    public BankService getBank() {
+        return bank;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+        try {
+            acceptor.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        bank.close();
+    }
+
+    private void acceptLoop() {
+        while (!server.isClosed()) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread handler = new Thread(() -> serve(socket), "bank-shard-conn");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (!server.isClosed()) {
+                    System.err.println("Error accepting shard connection: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return; // Router closed the connection
+                }
+                double result;
+                try {
+                    result = handle(op, in);
+                } catch (IllegalArgumentException | UncheckedIOException e) {
+                    out.writeByte(ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                    out.flush();
+                    continue;
+                }
+                out.writeByte(OK);
+                out.writeDouble(result);
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (!server.isClosed()) {
+                System.err.println("Shard connection failed: " + e.getMessage());
+            }
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    // Reads the request fields first so a rejected request never desynchronizes the stream
+    private double handle(byte op, DataInputStream in) throws IOException {
+        switch (op) {
+            case CREATE: {
+                String accNo = in.readUTF();
+                String holder = in.readUTF();
+                double amount = in.readDouble();
+                bank.createAccount(accNo, holder, amount);
+                return 0;
+            }
+            case DEPOSIT: {
+                String accNo = in.readUTF();
+                double amount = in.readDouble();
+                bank.deposit(accNo, amount);
+                return 0;
+            }
+            case WITHDRAW: {
+                String accNo = in.readUTF();
+                double amount = in.readDouble();
+                bank.withdraw(accNo, amount);
+                return 0;
+            }
+            case TRANSFER: {
+                String from = in.readUTF();
+                String to = in.readUTF();
+                double amount = in.readDouble();
+                bank.transfer(from, to, amount);
+                return 0;
+            }
+            case BALANCE:
+                return bank.checkBalance(in.readUTF());
+            case PREPARE_DEBIT: {
+                long txId = in.readLong();
+                String from = in.readUTF();
+                String to = in.readUTF();
+                double amount = in.readDouble();
+                bank.sendTransfer(from, to, amount);
+                pending.put(txId, new Pending(true, from, to, amount));
+                return 0;
+            }
+            case PREPARE_CREDIT: {
+                long txId = in.readLong();
+                String to = in.readUTF();
+                String from = in.readUTF();
+                double amount = in.readDouble();
+                bank.getAccount(to); // Throws "Account not found."
+                pending.put(txId, new Pending(false, to, from, amount));
+                return 0;
+            }
+            case COMMIT:
+                finish(in.readLong(), true);
+                return 0;
+            case ABORT:
+                finish(in.readLong(), false);
+                return 0;
+            default:
+                throw new IOException("Unknown shard request " + op);
+        }
+    }
+
+    // Applies this shard's side of the decision, then forgets the transaction. If applying fails
+    // (e.g. a ledger error) it stays pending, so the router's resend can apply it later.
+    private void finish(long txId, boolean commit) {
+        Pending transfer = pending.get(txId);
+        if (transfer == null) {
+            return; // Already finished, or never prepared here
+        }
+        synchronized (transfer) {
+            if (pending.get(txId) != transfer) {
+                return;
+            }
+            if (commit && !transfer.debit) {
+                bank.receiveTransfer(transfer.account, transfer.counterparty, transfer.amount);
+            } else if (!commit && transfer.debit) {
+                bank.cancelTransfer(transfer.account, transfer.counterparty, transfer.amount);
+            }
+            pending.remove(txId);
+        }
+    }
+
+    /**
+     * Runs one shard as its own process: {@code java service.BankShardServer <port> [ledgerDir]}.
+     * Without a ledger directory the shard is in-memory only.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = Integer.parseInt(args[0]);
+        BankService bank = args.length > 1 ? new BankService(Paths.get(args[1])) : new BankService();
+        BankShardServer shard = new BankShardServer(bank, port);
+        System.out.println("Bank shard listening on " + shard.getAddress());
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                shard.close();
+            } catch (IOException e) {
+                System.err.println("Error closing shard: " + e.getMessage());
+            }
+        }));
+        Thread.currentThread().join();
+    }
+
+    /** In-process shard with its ledger in {@code ledgerDir}. */
+    public static BankShardServer withLedger(Path ledgerDir) throws IOException {
+        return new BankShardServer(new BankService(ledgerDir), 0);
+    }
+}
@@ -0,0 +1,459 @@
+package service;
+
+import model.InventoryItem;
+import util.PersistentHashMap;
+import util.PersistentVector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe counterpart of {@link InventoryManager} that can be shared between the
+ * Swing EDT, import threads and other front-ends.
+ *
+ * The whole inventory is an immutable snapshot (persistent map + vector) behind an
+ * {@link AtomicReference}. Readers grab the current snapshot and never block; writers
+ * build the next snapshot and publish it with a compare-and-set. Mutations of the same
+ * ID are additionally serialized by a striped lock so their journal records are queued
+ * in the order they were applied. A single writer thread owns the journal and snapshot file.
+ * The snapshot also carries the trigram postings of {@link NGramIndex}, so a search sees
+ * the same version of the inventory as its results.
+ *
+ * A mutation that cannot be journaled is not lost as long as a later snapshot succeeds: the
+ * writer then compacts, and {@link #flush()} and {@link #close()} throw until it has.
+ * Mutations after {@link #close()} are rejected with IllegalStateException.
+ */
+public class ConcurrentInventoryManager implements Closeable {
+    private static final int LOCK_STRIPES = 64;
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    // Items are never mutated once published; an update stores a new InventoryItem
+    private static final class Snapshot {
+        final PersistentHashMap<String, Integer> slotById;
+        final PersistentVector<InventoryItem> slots; // Insertion order, null where deleted
+        final int size;
+        final PersistentHashMap<String, PersistentHashMap<String, Boolean>> postings; // Trigram -> IDs
+
+        Snapshot(PersistentHashMap<String, Integer> slotById, PersistentVector<InventoryItem> slots, int size,
+                 PersistentHashMap<String, PersistentHashMap<String, Boolean>> postings) {
+            this.slotById = slotById;
+            this.slots = slots;
+            this.size = size;
+            this.postings = postings;
+        }
+
+        InventoryItem get(String id) {
+            Integer slot = slotById.get(id);
+            return slot == null ? null : slots.get(slot);
+        }
+
+        List<InventoryItem> items() {
+            List<InventoryItem> items = new ArrayList<>(size);
+            slots.forEach(item -> {
+                if (item != null) {
+                    items.add(item);
+                }
+            });
+            return items;
+        }
+    }
+
+    private static final class Mutation {
+        final char op; // 'A' add, 'U' update, 'D' delete, 'F' flush marker, 'C' close marker
+        final InventoryItem item;
+        final String id;
+        final CompletableFuture<Void> done; // Flush and close markers only
+
+        Mutation(char op, InventoryItem item, String id, CompletableFuture<Void> done) {
+            this.op = op;
+            this.item = item;
+            this.id = id;
+            this.done = done;
+        }
+    }
+
+    private final AtomicReference<Snapshot> current;
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+    private final BlockingQueue<Mutation> pending = new LinkedBlockingQueue<>();
+    private final String dataFile;
+    private final InventoryJournal journal;
+    private final Thread writer;
+    private volatile boolean closed; // Set with every stripe lock held, so nothing is queued after the close marker
+
+    public ConcurrentInventoryManager() {
+        this("inventory.dat", "inventory.journal");
+    }
+
+    public ConcurrentInventoryManager(String dataFile, String journalFile) {
+        this.dataFile = dataFile;
+        // Recovery (binary or legacy snapshot plus journal replay) is shared with InventoryManager
+        PersistentHashMap<String, Integer> slotById = PersistentHashMap.empty();
+        PersistentVector<InventoryItem> slots = PersistentVector.empty();
+        PersistentHashMap<String, PersistentHashMap<String, Boolean>> postings = PersistentHashMap.empty();
+        try (InventoryManager recovered = new InventoryManager(dataFile, journalFile)) {
+            for (InventoryItem item : recovered.getAllItems()) {
+                slotById = slotById.put(item.getId(), slots.size());
+                slots = slots.append(copyOf(item));
+                postings = index(postings, item);
+            }
+        }
+        current = new AtomicReference<>(new Snapshot(slotById, slots, slotById.size(), postings));
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        journal = new InventoryJournal(journalFile);
+        writer = new Thread(this::writeLoop, "inventory-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public boolean addItem(InventoryItem item) {
+        InventoryItem stored = copyOf(item);
+        ReentrantLock lock = lockFor(item.getId());
+        lock.lock();
+        try {
+            checkOpen();
+            while (true) {
+                Snapshot snapshot = current.get();
+                if (snapshot.slotById.containsKey(stored.getId())) {
+                    return false; // Item with this ID already exists
+                }
+                Snapshot next = new Snapshot(snapshot.slotById.put(stored.getId(), snapshot.slots.size()),
+                        snapshot.slots.append(stored), snapshot.size + 1, index(snapshot.postings, stored));
+                if (current.compareAndSet(snapshot, next)) {
+                    pending.add(new Mutation('A', stored, stored.getId(), null));
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean updateItem(String id, String newName, int newQuantity, double newPrice) {
+        InventoryItem stored = new InventoryItem(id, newName, newQuantity, newPrice);
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            checkOpen();
+            while (true) {
+                Snapshot snapshot = current.get();
+                Integer slot = snapshot.slotById.get(id);
+                if (slot == null) {
+                    return false; // Item not found
+                }
+                InventoryItem old = snapshot.slots.get(slot);
+                PersistentHashMap<String, PersistentHashMap<String, Boolean>> postings = snapshot.postings;
+                if (!old.getName().toLowerCase().equals(newName.toLowerCase())) {
+                    postings = index(unindex(postings, old), stored);
+                }
+                Snapshot next = new Snapshot(snapshot.slotById, snapshot.slots.set(slot, stored), snapshot.size,
+                        postings);
+                if (current.compareAndSet(snapshot, next)) {
+                    pending.add(new Mutation('U', stored, id, null));
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean deleteItem(String id) {
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            checkOpen();
+            while (true) {
+                Snapshot snapshot = current.get();
+                Integer slot = snapshot.slotById.get(id);
+                if (slot == null) {
+                    return false;
+                }
+                Snapshot next = new Snapshot(snapshot.slotById.remove(id), snapshot.slots.set(slot, null),
+                        snapshot.size - 1, unindex(snapshot.postings, snapshot.slots.get(slot)));
+                if (next.slots.size() > 2 * next.size + 32) {
+                    next = compacted(next);
+                }
+                if (current.compareAndSet(snapshot, next)) {
+                    pending.add(new Mutation('D', null, id, null));
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Consistent point-in-time copy of all items, in insertion order. Never blocks writers. */
+    public List<InventoryItem> getAllItems() {
+        List<InventoryItem> items = current.get().items();
+        items.replaceAll(ConcurrentInventoryManager::copyOf);
+        return items;
+    }
+
+    public Optional<InventoryItem> getItemById(String id) {
+        return Optional.ofNullable(current.get().get(id)).map(ConcurrentInventoryManager::copyOf);
+    }
+
+    /**
+     * Case-insensitive substring match on name or ID, evaluated against one snapshot, in
+     * insertion order. Like {@link NGramIndex}, only the items sharing the query's rarest
+     * trigram are checked; queries shorter than a trigram scan the snapshot.
+     */
+    public List<InventoryItem> searchItems(String query) {
+        Snapshot snapshot = current.get();
+        String lowerQuery = query.toLowerCase();
+        List<InventoryItem> results = new ArrayList<>();
+        if (lowerQuery.length() < NGramIndex.N) {
+            snapshot.slots.forEach(item -> {
+                if (item != null && matches(item, lowerQuery)) {
+                    results.add(copyOf(item));
+                }
+            });
+            return results;
+        }
+        Set<String> grams = new HashSet<>();
+        NGramIndex.addGrams(lowerQuery, grams);
+        PersistentHashMap<String, Boolean> smallest = null;
+        for (String gram : grams) {
+            PersistentHashMap<String, Boolean> posting = snapshot.postings.get(gram);
+            if (posting == null) {
+                return results; // Some trigram occurs nowhere, so nothing can match
+            }
+            if (smallest == null || posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+        int[] matched = new int[smallest.size()];
+        int[] count = {0};
+        smallest.forEach((id, present) -> {
+            int slot = snapshot.slotById.get(id);
+            if (matches(snapshot.slots.get(slot), lowerQuery)) {
+                matched[count[0]++] = slot;
+            }
+        });
+        Arrays.sort(matched, 0, count[0]);
+        for (int i = 0; i < count[0]; i++) {
+            results.add(copyOf(snapshot.slots.get(matched[i])));
+        }
+        return results;
+    }
+
+    public int size() {
+        return current.get().size;
+    }
+
+    /**
+     * Blocks until every mutation made so far has been forced to disk.
+     *
+     * @throws IOException if some mutation could not be journaled and no snapshot has covered it yet
+     */
+    public void flush() throws IOException, InterruptedException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        ReentrantLock lock = stripes[0];
+        lock.lock();
+        try {
+            checkOpen();
+            pending.add(new Mutation('F', null, null, done));
+        } finally {
+            lock.unlock();
+        }
+        await(done);
+    }
+
+    /** Commits everything queued and stops the writer. Later mutations and flushes are rejected. */
+    @Override
+    public void close() throws IOException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            pending.add(new Mutation('C', null, null, done));
+        } finally {
+            for (ReentrantLock stripe : stripes) {
+                stripe.unlock();
+            }
+        }
+        try {
+            await(done);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing inventory", e);
+        }
+    }
+
+    // Single writer: the only thread that touches the journal and the snapshot file.
+    // Whatever has queued up while it was busy is appended as one batch and committed together.
+    // A failed write does not stop the batch: every mutation is already in the published
+    // snapshot, so the next successful compaction makes it durable.
+    private void writeLoop() {
+        List<Mutation> batch = new ArrayList<>();
+        IOException failure = null; // Set while some applied mutation may be missing from disk
+        while (true) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(batch);
+            for (Mutation mutation : batch) {
+                try {
+                    switch (mutation.op) {
+                        case 'A':
+                            journal.appendAdd(mutation.item);
+                            break;
+                        case 'U':
+                            journal.appendUpdate(mutation.item);
+                            break;
+                        case 'D':
+                            journal.appendDelete(mutation.id);
+                            break;
+                        case 'F':
+                        case 'C':
+                            if (failure != null) {
+                                compact();
+                                failure = null;
+                            }
+                            journal.sync();
+                            break;
+                        default:
+                            break;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error writing inventory journal: " + e.getMessage());
+                    failure = firstFailure(failure, e);
+                }
+                if (mutation.op == 'C') {
+                    try {
+                        journal.close();
+                    } catch (IOException e) {
+                        System.err.println("Error closing inventory journal: " + e.getMessage());
+                        failure = firstFailure(failure, e);
+                    }
+                    complete(mutation.done, failure);
+                    return; // Nothing is queued after the close marker
+                }
+                if (mutation.op == 'F') {
+                    complete(mutation.done, failure);
+                }
+            }
+            batch.clear();
+            try {
+                journal.flush();
+                if (failure != null || journal.getRecordCount() >= COMPACTION_THRESHOLD) {
+                    compact();
+                    failure = null;
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Error saving inventory: " + e.getMessage());
+                failure = firstFailure(failure, e);
+            }
+        }
+    }
+
+    private static IOException firstFailure(IOException failure, Exception e) {
+        if (failure != null) {
+            return failure;
+        }
+        return e instanceof IOException ? (IOException) e : new IOException(e.toString(), e);
+    }
+
+    private static void complete(CompletableFuture<Void> done, IOException failure) {
+        if (failure == null) {
+            done.complete(null);
+        } else {
+            done.completeExceptionally(failure);
+        }
+    }
+
+    private static void await(CompletableFuture<Void> done) throws IOException, InterruptedException {
+        try {
+            done.get();
+        } catch (ExecutionException e) {
+            throw (IOException) e.getCause(); // The writer only ever fails markers with an IOException
+        }
+    }
+
+    // Any mutation still queued is already contained in the snapshot written here;
+    // replaying it after the truncation converges to the same state.
+    private void compact() throws IOException {
+        Snapshot snapshot = current.get();
+        InventoryFileFormat.write(Paths.get(dataFile), snapshot.items(), snapshot.size);
+        journal.reset();
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Inventory is closed.");
+        }
+    }
+
+    // Postings hold IDs rather than slots, so they survive the renumbering below unchanged
+    private static Snapshot compacted(Snapshot snapshot) {
+        PersistentHashMap<String, Integer> slotById = PersistentHashMap.empty();
+        PersistentVector<InventoryItem> slots = PersistentVector.empty();
+        for (InventoryItem item : snapshot.items()) {
+            slotById = slotById.put(item.getId(), slots.size());
+            slots = slots.append(item);
+        }
+        return new Snapshot(slotById, slots, snapshot.size, snapshot.postings);
+    }
+
+    private static boolean matches(InventoryItem item, String lowerQuery) {
+        return item.getName().toLowerCase().contains(lowerQuery) || item.getId().toLowerCase().contains(lowerQuery);
+    }
+
+    private static Set<String> grams(InventoryItem item) {
+        Set<String> grams = new HashSet<>();
+        NGramIndex.addGrams(item.getId().toLowerCase(), grams);
+        NGramIndex.addGrams(item.getName().toLowerCase(), grams);
+        return grams;
+    }
+
+    private static PersistentHashMap<String, PersistentHashMap<String, Boolean>> index(
+            PersistentHashMap<String, PersistentHashMap<String, Boolean>> postings, InventoryItem item) {
+        for (String gram : grams(item)) {
+            PersistentHashMap<String, Boolean> ids = postings.get(gram);
+            postings = postings.put(gram, (ids == null ? PersistentHashMap.<String, Boolean>empty() : ids)
+                    .put(item.getId(), Boolean.TRUE));
+        }
+        return postings;
+    }
+
+    private static PersistentHashMap<String, PersistentHashMap<String, Boolean>> unindex(
+            PersistentHashMap<String, PersistentHashMap<String, Boolean>> postings, InventoryItem item) {
+        for (String gram : grams(item)) {
+            PersistentHashMap<String, Boolean> ids = postings.get(gram).remove(item.getId());
+            postings = ids.isEmpty() ? postings.remove(gram) : postings.put(gram, ids);
+        }
+        return postings;
+    }
+
+    private ReentrantLock lockFor(String id) {
+        return stripes[(id.hashCode() & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    private static InventoryItem copyOf(InventoryItem item) {
+        return new InventoryItem(item.getId(), item.getName(), item.getQuantity(), item.getPrice());
+    }
+}
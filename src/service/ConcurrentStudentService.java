@@ -0,0 +1,471 @@
+package service;
+
+import model.Student;
+import util.PersistentHashMap;
+import util.PersistentVector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Thread-safe counterpart of {@link StudentService}, for feeding enrollments from batch
+ * threads while the UI and reports read.
+ *
+ * The roster is an immutable {@link Snapshot} (persistent map + vector) behind an
+ * {@link AtomicReference}. {@link #snapshot()} hands it out in O(1) and readers never block;
+ * writers build the next version, sharing everything they did not touch, and publish it
+ * with a compare-and-set. Changes to the same ID are serialized by a striped lock so their
+ * log records are queued in the order they were applied, and a single writer thread owns
+ * the {@link StudentStore}.
+ *
+ * A change that cannot be written is not lost as long as a later snapshot succeeds: the writer
+ * then compacts, and {@link #flush()} and {@link #close()} throw until it has. Changes after
+ * {@link #close()} are rejected with IllegalStateException.
+ */
+public class ConcurrentStudentService implements Closeable {
+    private static final int LOCK_STRIPES = 64;
+    private static final int MIN_COMPACTION_RECORDS = 1000;
+
+    /**
+     * One consistent version of the roster. Students are never mutated once published (an
+     * update stores a new Student), and callers only ever see copies.
+     */
+    public static final class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(PersistentHashMap.empty(), PersistentVector.empty(),
+                PersistentHashMap.empty());
+
+        private final PersistentHashMap<Integer, Integer> slotById;
+        private final PersistentVector<Student> slots; // Insertion order, null where deleted
+        private final PersistentHashMap<String, PersistentHashMap<Integer, Integer>> byCourse; // Course -> ID -> slot
+
+        private Snapshot(PersistentHashMap<Integer, Integer> slotById, PersistentVector<Student> slots,
+                         PersistentHashMap<String, PersistentHashMap<Integer, Integer>> byCourse) {
+            this.slotById = slotById;
+            this.slots = slots;
+            this.byCourse = byCourse;
+        }
+
+        public int size() {
+            return slotById.size();
+        }
+
+        public Optional<Student> getStudentById(int id) {
+            Integer slot = slotById.get(id);
+            return slot == null ? Optional.empty() : Optional.of(copyOf(slots.get(slot)));
+        }
+
+        /** Visits every student in the order they were added, one copy at a time. */
+        public void forEachStudent(Consumer<? super Student> action) {
+            slots.forEach(student -> {
+                if (student != null) {
+                    action.accept(copyOf(student));
+                }
+            });
+        }
+
+        public List<Student> getAllStudents() {
+            List<Student> students = new ArrayList<>(size());
+            forEachStudent(students::add);
+            return students;
+        }
+
+        /** Students enrolled in exactly {@code course}, in the order they were added. */
+        public List<Student> studentsInCourse(String course) {
+            PersistentHashMap<Integer, Integer> members = byCourse.get(course);
+            if (members == null) {
+                return Collections.emptyList();
+            }
+            int[] memberSlots = new int[members.size()];
+            int[] count = {0};
+            members.forEach((id, slot) -> memberSlots[count[0]++] = slot);
+            Arrays.sort(memberSlots);
+            List<Student> students = new ArrayList<>(memberSlots.length);
+            for (int slot : memberSlots) {
+                students.add(copyOf(slots.get(slot)));
+            }
+            return students;
+        }
+
+        private Snapshot withStudent(int slot, Student student) {
+            return new Snapshot(slotById.put(student.getId(), slot),
+                    slot == slots.size() ? slots.append(student) : slots.set(slot, student),
+                    enroll(byCourse, student.getCourse(), student.getId(), slot));
+        }
+
+        private Snapshot without(int slot, Student student) {
+            return new Snapshot(slotById.remove(student.getId()), slots.set(slot, null),
+                    unenroll(byCourse, student.getCourse(), student.getId()));
+        }
+    }
+
+    private static final class Mutation {
+        final char op; // 'A' add, 'U' update, 'D' delete, 'F' flush marker, 'C' close marker
+        final Student student;
+        final int id;
+        final CompletableFuture<Void> done; // Flush and close markers only
+
+        Mutation(char op, Student student, int id, CompletableFuture<Void> done) {
+            this.op = op;
+            this.student = student;
+            this.id = id;
+            this.done = done;
+        }
+    }
+
+    private final AtomicReference<Snapshot> current;
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+    private final BlockingQueue<Mutation> pending = new LinkedBlockingQueue<>();
+    private final StudentStore store; // Null for an in-memory roster
+    private final Thread writer;
+    private volatile boolean closed; // Set with every stripe lock held, so no change is queued after the close marker
+
+    /** An in-memory roster that is not persisted. */
+    public ConcurrentStudentService() {
+        this(Snapshot.EMPTY, null);
+    }
+
+    /** A roster persisted in {@code dataFile} and {@code logFile}, the same files {@link StudentService} uses. */
+    public ConcurrentStudentService(Path dataFile, Path logFile) {
+        this(recover(dataFile, logFile), open(dataFile, logFile));
+    }
+
+    private ConcurrentStudentService(Snapshot initial, StudentStore store) {
+        current = new AtomicReference<>(initial);
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.store = store;
+        if (store != null) {
+            writer = new Thread(this::writeLoop, "student-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            writer = null;
+        }
+    }
+
+    /** The current roster, in O(1). It never changes, however many writes follow. */
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    public boolean addStudent(Student student) {
+        StudentStore.checkFields(student.getName(), student.getCourse());
+        Student stored = copyOf(student);
+        ReentrantLock lock = lockFor(student.getId());
+        lock.lock();
+        try {
+            checkOpen();
+            while (true) {
+                Snapshot snapshot = current.get();
+                if (snapshot.slotById.containsKey(stored.getId())) {
+                    return false; // Student with this ID already exists
+                }
+                if (current.compareAndSet(snapshot, snapshot.withStudent(snapshot.slots.size(), stored))) {
+                    enqueue(new Mutation('A', stored, stored.getId(), null));
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean updateStudent(int id, String newName, String newCourse) {
+        StudentStore.checkFields(newName, newCourse);
+        Student stored = new Student(id, newName, newCourse);
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            checkOpen();
+            while (true) {
+                Snapshot snapshot = current.get();
+                Integer slot = snapshot.slotById.get(id);
+                if (slot == null) {
+                    return false; // Student not found
+                }
+                Snapshot next = snapshot.without(slot, snapshot.slots.get(slot)).withStudent(slot, stored);
+                if (current.compareAndSet(snapshot, next)) {
+                    enqueue(new Mutation('U', stored, id, null));
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean deleteStudent(int id) {
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            checkOpen();
+            while (true) {
+                Snapshot snapshot = current.get();
+                Integer slot = snapshot.slotById.get(id);
+                if (slot == null) {
+                    return false;
+                }
+                Snapshot next = snapshot.without(slot, snapshot.slots.get(slot));
+                if (next.slots.size() > 2 * next.size() + 32) {
+                    next = compacted(next);
+                }
+                if (current.compareAndSet(snapshot, next)) {
+                    enqueue(new Mutation('D', null, id, null));
+                    return true;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Optional<Student> getStudentById(int id) {
+        return current.get().getStudentById(id);
+    }
+
+    /** Consistent point-in-time copy of the roster, in insertion order. Never blocks writers. */
+    public List<Student> getAllStudents() {
+        return current.get().getAllStudents();
+    }
+
+    public List<Student> studentsInCourse(String course) {
+        return current.get().studentsInCourse(course);
+    }
+
+    public int size() {
+        return current.get().size();
+    }
+
+    /**
+     * Blocks until every change made so far has been forced to disk.
+     *
+     * @throws IOException if some change could not be written and no snapshot has covered it yet
+     */
+    public void flush() throws IOException, InterruptedException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        ReentrantLock lock = stripes[0];
+        lock.lock();
+        try {
+            checkOpen();
+            if (store == null) {
+                return;
+            }
+            pending.add(new Mutation('F', null, 0, done));
+        } finally {
+            lock.unlock();
+        }
+        await(done);
+    }
+
+    /** Writes a final snapshot if needed and stops the writer. Later changes are rejected. */
+    @Override
+    public void close() throws IOException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (store == null) {
+                return;
+            }
+            pending.add(new Mutation('C', null, 0, done));
+        } finally {
+            for (ReentrantLock stripe : stripes) {
+                stripe.unlock();
+            }
+        }
+        try {
+            await(done);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing student roster", e);
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Student roster is closed.");
+        }
+    }
+
+    private static void await(CompletableFuture<Void> done) throws IOException, InterruptedException {
+        try {
+            done.get();
+        } catch (ExecutionException e) {
+            throw (IOException) e.getCause(); // The writer only ever fails markers with an IOException
+        }
+    }
+
+    private void enqueue(Mutation mutation) {
+        if (store != null) {
+            pending.add(mutation);
+        }
+    }
+
+    // Single writer: the only thread that touches the store. Whatever has queued up while it
+    // was busy is appended as one batch. A failed write does not stop the batch: every change
+    // is already in the in-memory roster, so the next successful snapshot makes it durable.
+    private void writeLoop() {
+        List<Mutation> batch = new ArrayList<>();
+        IOException failure = null; // Set while some applied change may be missing from disk
+        while (true) {
+            try {
+                batch.add(pending.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            pending.drainTo(batch);
+            for (Mutation mutation : batch) {
+                try {
+                    switch (mutation.op) {
+                        case 'A':
+                            store.appendAdd(mutation.student);
+                            break;
+                        case 'U':
+                            store.appendUpdate(mutation.student);
+                            break;
+                        case 'D':
+                            store.appendDelete(mutation.id);
+                            break;
+                        case 'F':
+                            if (failure != null) {
+                                compact();
+                                failure = null;
+                            }
+                            store.sync();
+                            break;
+                        case 'C':
+                            if (failure != null || store.getLogCount() > 0) {
+                                compact();
+                                failure = null;
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error writing student log: " + e.getMessage());
+                    failure = firstFailure(failure, e);
+                }
+                if (mutation.op == 'C') {
+                    try {
+                        store.close();
+                    } catch (IOException e) {
+                        System.err.println("Error closing student log: " + e.getMessage());
+                        failure = firstFailure(failure, e);
+                    }
+                    complete(mutation.done, failure);
+                    return; // Nothing is queued after the close marker
+                }
+                if (mutation.op == 'F') {
+                    complete(mutation.done, failure);
+                }
+            }
+            batch.clear();
+            if (failure != null || store.getLogCount() >= Math.max(MIN_COMPACTION_RECORDS, current.get().size())) {
+                try {
+                    compact();
+                    failure = null;
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Error saving students: " + e.getMessage());
+                    failure = firstFailure(failure, e);
+                }
+            }
+        }
+    }
+
+    private static IOException firstFailure(IOException failure, Exception e) {
+        if (failure != null) {
+            return failure;
+        }
+        return e instanceof IOException ? (IOException) e : new IOException(e.toString(), e);
+    }
+
+    private static void complete(CompletableFuture<Void> done, IOException failure) {
+        if (failure == null) {
+            done.complete(null);
+        } else {
+            done.completeExceptionally(failure);
+        }
+    }
+
+    // Any change still queued is already contained in the snapshot written here;
+    // replaying it after the truncation converges to the same roster.
+    private void compact() throws IOException {
+        List<Student> students = new ArrayList<>();
+        current.get().slots.forEach(student -> {
+            if (student != null) {
+                students.add(student);
+            }
+        });
+        store.compact(students);
+    }
+
+    // Recovery (snapshot plus log replay) is shared with StudentService, which also folds the log
+    private static Snapshot recover(Path dataFile, Path logFile) {
+        Snapshot snapshot = Snapshot.EMPTY;
+        try (StudentService recovered = new StudentService(dataFile, logFile, false)) {
+            for (Student student : recovered.getAllStudents()) {
+                snapshot = snapshot.withStudent(snapshot.slots.size(), copyOf(student));
+            }
+        }
+        return snapshot;
+    }
+
+    private static StudentStore open(Path dataFile, Path logFile) {
+        try {
+            return new StudentStore(dataFile, logFile);
+        } catch (IOException e) {
+            System.err.println("Error opening student storage, changes will not be saved: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static Snapshot compacted(Snapshot snapshot) {
+        Snapshot fresh = Snapshot.EMPTY;
+        for (Student student : snapshot.getAllStudents()) {
+            fresh = fresh.withStudent(fresh.slots.size(), student);
+        }
+        return fresh;
+    }
+
+    private static PersistentHashMap<String, PersistentHashMap<Integer, Integer>> enroll(
+            PersistentHashMap<String, PersistentHashMap<Integer, Integer>> byCourse, String course, int id, int slot) {
+        PersistentHashMap<Integer, Integer> members = byCourse.get(course);
+        return byCourse.put(course, (members == null ? PersistentHashMap.<Integer, Integer>empty() : members)
+                .put(id, slot));
+    }
+
+    private static PersistentHashMap<String, PersistentHashMap<Integer, Integer>> unenroll(
+            PersistentHashMap<String, PersistentHashMap<Integer, Integer>> byCourse, String course, int id) {
+        PersistentHashMap<Integer, Integer> members = byCourse.get(course).remove(id);
+        return members.isEmpty() ? byCourse.remove(course) : byCourse.put(course, members);
+    }
+
+    private ReentrantLock lockFor(int id) {
+        return stripes[(id & 0x7fffffff) % LOCK_STRIPES];
+    }
+
+    private static Student copyOf(Student student) {
+        return new Student(student.getId(), student.getName(), student.getCourse());
+    }
+}
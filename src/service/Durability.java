@@ -0,0 +1,13 @@
+package service;
+
+/**
+ * How far a mutation must have reached before the call that made it returns.
+ */
+public enum Durability {
+    /** Queued in memory; written by the next group commit of the write-behind window. */
+    DEFERRED,
+    /** Written to the OS before returning; survives a JVM crash, not a power loss. */
+    WRITTEN,
+    /** Forced to the storage device (fsync) before returning. */
+    SYNCED
+}
@@ -0,0 +1,242 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded, time-expiring record of which idempotency keys have been seen and how their
+ * request ended, so a retried request can be answered without applying it again.
+ *
+ * Keys live in an open-addressing table of primitive arrays (linear probing, backward-shift
+ * deletion); no objects are allocated per entry. Every entry has the same time to live, so
+ * insertion order is also expiry order: a FIFO ring of keys drops expired entries from its
+ * head and, once the cache is full, evicts the oldest finished entry even if it has not
+ * expired yet. An entry whose request is still running is never dropped, since a duplicate
+ * would then run the request again; if every entry is still running, a new claim waits.
+ * Failure messages are stored as small codes into a shared message table.
+ */
+public class IdempotencyCache {
+    /** {@link #claim} result: the key is new (or was released) and the caller must run the request. */
+    public static final int CLAIMED = -2;
+    /** {@link #claim} result: a request with this key already succeeded. */
+    public static final int SUCCEEDED = -1;
+
+    private static final byte EMPTY = 0;
+    private static final byte PENDING = 1;
+    private static final byte DONE = 2;
+    private static final byte RELEASED = 3;
+
+    private final long ttlMillis;
+    private final int maxEntries;
+
+    // Open-addressing table
+    private final long[] keys;
+    private final byte[] states;
+    private final long[] fingerprints;
+    private final int[] results; // SUCCEEDED or a message code
+    private final int mask;
+
+    // Insertion-ordered ring: the oldest entry sits at head
+    private final long[] ringKeys;
+    private final long[] ringExpiry;
+    private int head;
+    private int count;
+
+    private final Map<String, Integer> codeByMessage = new HashMap<>();
+    private final List<String> messages = new ArrayList<>();
+
+    public IdempotencyCache(int maxEntries, long ttlMillis) {
+        if (maxEntries < 1 || ttlMillis <= 0) {
+            throw new IllegalArgumentException("Cache size and time to live must be positive.");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+        int capacity = Integer.highestOneBit(Math.max(2, maxEntries * 2 - 1)) << 1; // Load factor <= 0.5
+        keys = new long[capacity];
+        states = new byte[capacity];
+        fingerprints = new long[capacity];
+        results = new int[capacity];
+        mask = capacity - 1;
+        ringKeys = new long[maxEntries];
+        ringExpiry = new long[maxEntries];
+    }
+
+    /**
+     * Claims {@code key} for a request, or reports how the earlier request with this key ended:
+     * {@link #CLAIMED}, {@link #SUCCEEDED}, or a code for {@link #message}. If that request is
+     * still running, waits for it, and so does a new key while every entry is still running.
+     * {@code fingerprint} identifies the request's parameters (see {@link #fingerprint});
+     * reusing a key for a different request is rejected.
+     */
+    public synchronized int claim(long key, long fingerprint) {
+        while (true) {
+            expire(System.currentTimeMillis());
+            int slot = find(key);
+            if (slot < 0) {
+                if (insert(key, fingerprint)) {
+                    return CLAIMED;
+                }
+                awaitChange(); // Full of running requests
+                continue;
+            }
+            if (fingerprints[slot] != fingerprint) {
+                throw new IllegalArgumentException("Idempotency key was already used for a different request.");
+            }
+            switch (states[slot]) {
+                case DONE:
+                    return results[slot];
+                case RELEASED:
+                    states[slot] = PENDING;
+                    return CLAIMED;
+                default:
+                    awaitChange(); // The first request with this key is still running
+            }
+        }
+    }
+
+    /**
+     * 64-bit fingerprint of a request's parameters (FNV-1a over the fields, then the amount's
+     * bits). Requests that differ only in the amount always get different fingerprints.
+     */
+    public static long fingerprint(double amount, String... fields) {
+        long hash = 0xCBF29CE484222325L;
+        for (String field : fields) {
+            String value = String.valueOf(field);
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+            }
+            hash = (hash ^ 0xFFFF) * 0x100000001B3L; // Separator, so "ab","c" and "a","bc" differ
+        }
+        return (hash ^ Double.doubleToLongBits(amount)) * 0x100000001B3L;
+    }
+
+    // Woken by complete() and release()
+    private void awaitChange() {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a running request", e);
+        }
+    }
+
+    /** Records the outcome of a claimed request: {@code error} is null on success. */
+    public synchronized void complete(long key, String error) {
+        int slot = find(key);
+        if (slot >= 0) {
+            states[slot] = DONE;
+            results[slot] = error == null ? SUCCEEDED : codeOf(error);
+        }
+        notifyAll();
+    }
+
+    /** The claimed request was not applied (e.g. an I/O failure); a retry may run it again. */
+    public synchronized void release(long key) {
+        int slot = find(key);
+        if (slot >= 0) {
+            states[slot] = RELEASED;
+        }
+        notifyAll();
+    }
+
+    public synchronized String message(int code) {
+        return messages.get(code);
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    private void expire(long now) {
+        while (count > 0 && ringExpiry[head] <= now) {
+            evictOldest();
+        }
+    }
+
+    // False if every entry is still running: none of them may be dropped
+    private boolean insert(long key, long fingerprint) {
+        for (int round = 0; count == maxEntries && round < maxEntries; round++) {
+            evictOldest();
+        }
+        if (count == maxEntries) {
+            return false;
+        }
+        int slot = index(key);
+        while (states[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        states[slot] = PENDING;
+        fingerprints[slot] = fingerprint;
+        int tail = (head + count) % maxEntries;
+        ringKeys[tail] = key;
+        ringExpiry[tail] = System.currentTimeMillis() + ttlMillis;
+        count++;
+        return true;
+    }
+
+    private void evictOldest() {
+        long key = ringKeys[head];
+        head = (head + 1) % maxEntries;
+        count--;
+        int slot = find(key);
+        if (slot >= 0 && states[slot] == PENDING) {
+            // Still running: keep it so its duplicates keep waiting, and re-queue at the tail
+            int tail = (head + count) % maxEntries;
+            ringKeys[tail] = key;
+            ringExpiry[tail] = System.currentTimeMillis() + ttlMillis;
+            count++;
+            return;
+        }
+        if (slot >= 0) {
+            delete(slot);
+        }
+    }
+
+    // Backward-shift deletion keeps probe sequences intact without tombstones
+    private void delete(int slot) {
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (states[next] != EMPTY) {
+            int home = index(keys[next]);
+            // Move the entry back if the hole lies on its probe path (between home and next)
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                states[hole] = states[next];
+                fingerprints[hole] = fingerprints[next];
+                results[hole] = results[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        states[hole] = EMPTY;
+    }
+
+    private int find(long key) {
+        int slot = index(key);
+        while (states[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int index(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private int codeOf(String message) {
+        Integer code = codeByMessage.get(message);
+        if (code == null) {
+            code = messages.size();
+            messages.add(message);
+            codeByMessage.put(message, code);
+        }
+        return code;
+    }
+}
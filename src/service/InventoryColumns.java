@@ -0,0 +1,307 @@
+package service;
+
+import model.InventoryItem;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Deque;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Column-oriented copy of the inventory for analytics.
+ * Quantities and prices live in primitive arrays and names are dictionary-encoded, so
+ * aggregates run as tight loops over arrays instead of walking item objects. Large
+ * scans are split across a fork-join pool. A name leaves the dictionary with its last row,
+ * and its code is reused.
+ *
+ * {@link InventoryManager} applies every add, update and delete here as well, so the
+ * columns always match the row-oriented API. Rows are not kept in insertion order.
+ */
+public class InventoryColumns {
+    // Below this many rows a scan is cheaper than forking
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private String[] ids = new String[16];
+    private int[] quantities = new int[16];
+    private double[] prices = new double[16];
+    private int[] nameCodes = new int[16];
+    private int rowCount;
+
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private final Map<String, Integer> codeByName = new HashMap<>();
+    private final List<String> names = new ArrayList<>(); // Null where the code is free
+    private int[] nameRefs = new int[16]; // Rows using each code
+    private final Deque<Integer> freeCodes = new ArrayDeque<>();
+
+    void add(InventoryItem item) {
+        if (rowCount == ids.length) {
+            int capacity = rowCount * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            quantities = Arrays.copyOf(quantities, capacity);
+            prices = Arrays.copyOf(prices, capacity);
+            nameCodes = Arrays.copyOf(nameCodes, capacity);
+        }
+        int row = rowCount++;
+        ids[row] = item.getId();
+        quantities[row] = item.getQuantity();
+        prices[row] = item.getPrice();
+        nameCodes[row] = encode(item.getName());
+        rowById.put(item.getId(), row);
+    }
+
+    void update(String id, String name, int quantity, double price) {
+        Integer row = rowById.get(id);
+        if (row != null) {
+            quantities[row] = quantity;
+            prices[row] = price;
+            int old = nameCodes[row];
+            nameCodes[row] = encode(name); // Before the release, so an unchanged name keeps its code
+            release(old);
+        }
+    }
+
+    // The last row moves into the hole, so deletes stay O(1)
+    void remove(String id) {
+        Integer row = rowById.remove(id);
+        if (row == null) {
+            return;
+        }
+        release(nameCodes[row]);
+        int last = --rowCount;
+        if (row != last) {
+            ids[row] = ids[last];
+            quantities[row] = quantities[last];
+            prices[row] = prices[last];
+            nameCodes[row] = nameCodes[last];
+            rowById.put(ids[row], row);
+        }
+        ids[last] = null;
+    }
+
+    void clear() {
+        Arrays.fill(ids, 0, rowCount, null);
+        rowCount = 0;
+        rowById.clear();
+        codeByName.clear();
+        names.clear();
+        freeCodes.clear();
+    }
+
+    private int encode(String name) {
+        Integer code = codeByName.get(name);
+        if (code != null) {
+            nameRefs[code]++;
+            return code;
+        }
+        if (freeCodes.isEmpty()) {
+            code = names.size();
+            names.add(name);
+            if (code == nameRefs.length) {
+                nameRefs = Arrays.copyOf(nameRefs, code * 2);
+            }
+        } else {
+            code = freeCodes.pop();
+            names.set(code, name);
+        }
+        nameRefs[code] = 1;
+        codeByName.put(name, code);
+        return code;
+    }
+
+    private void release(int code) {
+        if (--nameRefs[code] == 0) {
+            codeByName.remove(names.get(code));
+            names.set(code, null);
+            freeCodes.push(code);
+        }
+    }
+
+    public int size() {
+        return rowCount;
+    }
+
+    /** Sum of quantity × price over all items. */
+    public double totalStockValue() {
+        return scan(Aggregate.STOCK_VALUE, 0);
+    }
+
+    public long totalQuantity() {
+        return count(Aggregate.QUANTITY, 0);
+    }
+
+    /** Number of items whose quantity is strictly below {@code threshold}. */
+    public int countQuantityBelow(int threshold) {
+        return (int) count(Aggregate.COUNT_BELOW, threshold);
+    }
+
+    /** Number of distinct item names currently in use. */
+    public int distinctNameCount() {
+        return codeByName.size();
+    }
+
+    public OptionalDouble minPrice() {
+        return rowCount == 0 ? OptionalDouble.empty() : OptionalDouble.of(scan(Aggregate.MIN_PRICE, 0));
+    }
+
+    public OptionalDouble maxPrice() {
+        return rowCount == 0 ? OptionalDouble.empty() : OptionalDouble.of(scan(Aggregate.MAX_PRICE, 0));
+    }
+
+    /**
+     * Stock value grouped by the first {@code prefixLength} characters of the item name.
+     * The prefix is resolved once per distinct name, not once per row.
+     */
+    public Map<String, Double> stockValueByNamePrefix(int prefixLength) {
+        Map<String, Integer> groupByPrefix = new LinkedHashMap<>();
+        int[] groupOfCode = new int[names.size()];
+        for (int code = 0; code < groupOfCode.length; code++) {
+            String name = names.get(code);
+            if (name == null) {
+                continue; // Free code, no row refers to it
+            }
+            String prefix = name.length() <= prefixLength ? name : name.substring(0, prefixLength);
+            groupOfCode[code] = groupByPrefix.computeIfAbsent(prefix, p -> groupByPrefix.size());
+        }
+        double[] totals = new double[groupByPrefix.size()];
+        for (int row = 0; row < rowCount; row++) {
+            totals[groupOfCode[nameCodes[row]]] += quantities[row] * prices[row];
+        }
+        Map<String, Double> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : groupByPrefix.entrySet()) {
+            result.put(entry.getKey(), totals[entry.getValue()]); // Every name in the dictionary has a row
+        }
+        return result;
+    }
+
+    private enum Aggregate {
+        STOCK_VALUE, QUANTITY, COUNT_BELOW, MIN_PRICE, MAX_PRICE
+    }
+
+    private double scan(Aggregate aggregate, int threshold) {
+        if (rowCount < PARALLEL_THRESHOLD) {
+            return scanRange(aggregate, threshold, 0, rowCount);
+        }
+        return ForkJoinPool.commonPool().invoke(new ScanTask(aggregate, threshold, 0, rowCount));
+    }
+
+    // Integer aggregates get their own path so sums stay exact instead of passing through a double
+    private long count(Aggregate aggregate, int threshold) {
+        if (rowCount < PARALLEL_THRESHOLD) {
+            return countRange(aggregate, threshold, 0, rowCount);
+        }
+        return ForkJoinPool.commonPool().invoke(new CountTask(aggregate, threshold, 0, rowCount));
+    }
+
+    private long countRange(Aggregate aggregate, int threshold, int from, int to) {
+        long sum = 0;
+        if (aggregate == Aggregate.QUANTITY) {
+            for (int i = from; i < to; i++) {
+                sum += quantities[i];
+            }
+        } else {
+            for (int i = from; i < to; i++) {
+                if (quantities[i] < threshold) {
+                    sum++;
+                }
+            }
+        }
+        return sum;
+    }
+
+    private double scanRange(Aggregate aggregate, int threshold, int from, int to) {
+        switch (aggregate) {
+            case STOCK_VALUE: {
+                double sum = 0;
+                for (int i = from; i < to; i++) {
+                    sum += quantities[i] * prices[i];
+                }
+                return sum;
+            }
+            case MIN_PRICE: {
+                double min = Double.POSITIVE_INFINITY;
+                for (int i = from; i < to; i++) {
+                    min = Math.min(min, prices[i]);
+                }
+                return min;
+            }
+            default: {
+                double max = Double.NEGATIVE_INFINITY;
+                for (int i = from; i < to; i++) {
+                    max = Math.max(max, prices[i]);
+                }
+                return max;
+            }
+        }
+    }
+
+    private class ScanTask extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final Aggregate aggregate;
+        private final int threshold;
+        private final int from;
+        private final int to;
+
+        ScanTask(Aggregate aggregate, int threshold, int from, int to) {
+            this.aggregate = aggregate;
+            this.threshold = threshold;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                return scanRange(aggregate, threshold, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(aggregate, threshold, from, mid);
+            left.fork();
+            double right = new ScanTask(aggregate, threshold, mid, to).compute();
+            double leftResult = left.join();
+            switch (aggregate) {
+                case MIN_PRICE:
+                    return Math.min(leftResult, right);
+                case MAX_PRICE:
+                    return Math.max(leftResult, right);
+                default:
+                    return leftResult + right;
+            }
+        }
+    }
+
+    private class CountTask extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final Aggregate aggregate;
+        private final int threshold;
+        private final int from;
+        private final int to;
+
+        CountTask(Aggregate aggregate, int threshold, int from, int to) {
+            this.aggregate = aggregate;
+            this.threshold = threshold;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                return countRange(aggregate, threshold, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            CountTask left = new CountTask(aggregate, threshold, from, mid);
+            left.fork();
+            long right = new CountTask(aggregate, threshold, mid, to).compute();
+            return left.join() + right;
+        }
+    }
+}
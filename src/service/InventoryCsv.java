@@ -0,0 +1,302 @@
+package service;
+
+import model.InventoryItem;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Streaming bulk import and export of inventory items as CSV or TSV.
+ *
+ * Columns are {@code id, name, quantity, price}; an optional header line is skipped.
+ * Fields may be wrapped in double quotes (with {@code ""} as an escaped quote), and a quoted
+ * field may span lines; its line breaks are read back as {@code \n}.
+ */
+public class InventoryCsv {
+    public static final char CSV = ',';
+    public static final char TSV = '\t';
+
+    private static final int CHUNK_RECORDS = 8192;
+    private static final String[] HEADER = {"id", "name", "quantity", "price"};
+
+    /** Outcome of an import: how many rows were added and why the others were not. */
+    public static class ImportResult {
+        private final int imported;
+        private final int duplicates;
+        private final List<String> errors;
+
+        ImportResult(int imported, int duplicates, List<String> errors) {
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.errors = errors;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        /** Rows skipped because the ID appeared earlier in the file or is already in the inventory. */
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        /** One message per rejected row, e.g. "Line 12: Quantity and Price cannot be negative." */
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+
+    // Rows of one chunk after parsing; errors carry the line number each record starts on
+    private static class ParsedChunk {
+        final List<InventoryItem> items = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+    }
+
+    private final ForkJoinPool pool;
+
+    public InventoryCsv() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public InventoryCsv(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Reads the file in chunks, parses chunks in parallel, then validates and de-duplicates IDs
+     * in file order (first occurrence wins) and commits all new items to the manager at once.
+     */
+    public ImportResult importFrom(Path file, char delimiter, InventoryManager manager, Durability durability)
+            throws IOException {
+        List<InventoryItem> accepted = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        Set<String> seenIds = new HashSet<>();
+        int[] duplicates = new int[1];
+        // Bound the number of chunks in flight so memory stays proportional to the pool size
+        int maxInFlight = pool.getParallelism() * 2;
+        Deque<ForkJoinTask<ParsedChunk>> inFlight = new ArrayDeque<>();
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            List<String> records = new ArrayList<>(CHUNK_RECORDS);
+            int[] recordLines = new int[CHUNK_RECORDS];
+            StringBuilder open = null; // A record whose quoted field continues on the next line
+            int openLine = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && isHeader(line, delimiter)) {
+                    continue;
+                }
+                // An odd number of quotes on a line opens or closes a quoted field ("" escapes count twice)
+                String record;
+                int recordLine;
+                if (open != null) {
+                    open.append('\n').append(line);
+                    if (!hasOddQuotes(line)) {
+                        continue;
+                    }
+                    record = open.toString();
+                    recordLine = openLine;
+                    open = null;
+                } else if (hasOddQuotes(line)) {
+                    open = new StringBuilder(line);
+                    openLine = lineNumber;
+                    continue;
+                } else {
+                    record = line;
+                    recordLine = lineNumber;
+                }
+                recordLines[records.size()] = recordLine;
+                records.add(record);
+                if (records.size() == CHUNK_RECORDS) {
+                    inFlight.add(submit(records, recordLines, delimiter));
+                    records = new ArrayList<>(CHUNK_RECORDS);
+                    recordLines = new int[CHUNK_RECORDS];
+                    if (inFlight.size() >= maxInFlight) {
+                        merge(inFlight.poll().join(), manager, seenIds, accepted, errors, duplicates);
+                    }
+                }
+            }
+            if (open != null) {
+                recordLines[records.size()] = openLine; // Reported as an unterminated quoted field
+                records.add(open.toString());
+            }
+            if (!records.isEmpty()) {
+                inFlight.add(submit(records, recordLines, delimiter));
+            }
+        }
+        while (!inFlight.isEmpty()) {
+            merge(inFlight.poll().join(), manager, seenIds, accepted, errors, duplicates);
+        }
+
+        int imported = manager.addItems(accepted, durability);
+        return new ImportResult(imported, duplicates[0] + accepted.size() - imported, Collections.unmodifiableList(errors));
+    }
+
+    /** Writes every item, one line at a time, without copying the inventory. */
+    public void exportTo(Path file, char delimiter, InventoryManager manager) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(String.join(String.valueOf(delimiter), HEADER));
+            writer.newLine();
+            try {
+                manager.forEachItem(item -> {
+                    try {
+                        writer.write(quote(item.getId(), delimiter));
+                        writer.write(delimiter);
+                        writer.write(quote(item.getName(), delimiter));
+                        writer.write(delimiter);
+                        writer.write(Integer.toString(item.getQuantity()));
+                        writer.write(delimiter);
+                        writer.write(Double.toString(item.getPrice()));
+                        writer.newLine();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private ForkJoinTask<ParsedChunk> submit(List<String> records, int[] recordLines, char delimiter) {
+        return pool.submit(() -> parseChunk(records, recordLines, delimiter));
+    }
+
+    private static void merge(ParsedChunk chunk, InventoryManager manager, Set<String> seenIds,
+                              List<InventoryItem> accepted, List<String> errors, int[] duplicates) {
+        errors.addAll(chunk.errors);
+        for (InventoryItem item : chunk.items) {
+            if (!seenIds.add(item.getId()) || manager.getItemById(item.getId()).isPresent()) {
+                duplicates[0]++;
+            } else {
+                accepted.add(item);
+            }
+        }
+    }
+
+    private static ParsedChunk parseChunk(List<String> records, int[] recordLines, char delimiter) {
+        ParsedChunk chunk = new ParsedChunk();
+        for (int i = 0; i < records.size(); i++) {
+            String record = records.get(i);
+            if (record.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                chunk.items.add(parseLine(record, delimiter));
+            } catch (IllegalArgumentException e) {
+                chunk.errors.add("Line " + recordLines[i] + ": " + e.getMessage());
+            }
+        }
+        return chunk;
+    }
+
+    // Same rules as the inventory GUI
+    static InventoryItem parseLine(String line, char delimiter) {
+        List<String> fields = split(line, delimiter);
+        if (fields.size() != 4) {
+            throw new IllegalArgumentException("Expected 4 fields but found " + fields.size() + ".");
+        }
+        String id = fields.get(0).trim();
+        String name = fields.get(1).trim();
+        if (id.isEmpty() || name.isEmpty()) {
+            throw new IllegalArgumentException("Item ID and Name cannot be empty.");
+        }
+        int quantity;
+        double price;
+        try {
+            quantity = Integer.parseInt(fields.get(2).trim());
+            price = Double.parseDouble(fields.get(3).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid quantity or price format.");
+        }
+        if (quantity < 0 || price < 0) {
+            throw new IllegalArgumentException("Quantity and Price cannot be negative.");
+        }
+        return new InventoryItem(id, name, quantity, price);
+    }
+
+    private static List<String> split(String line, char delimiter) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field.");
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static boolean hasOddQuotes(String line) {
+        boolean odd = false;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '"') {
+                odd = !odd;
+            }
+        }
+        return odd;
+    }
+
+    private static String quote(String value, char delimiter) {
+        if (value.indexOf(delimiter) < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static boolean isHeader(String line, char delimiter) {
+        List<String> fields;
+        try {
+            fields = split(line, delimiter);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        if (fields.size() != HEADER.length) {
+            return false;
+        }
+        for (int i = 0; i < HEADER.length; i++) {
+            if (!fields.get(i).trim().equalsIgnoreCase(HEADER[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,163 @@
+package service;
+
+import model.InventoryItem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Flat binary layout of the inventory snapshot file.
+ *
+ * <pre>
+ * header : int magic ("SFIV"), short version, int itemCount
+ * record : int length, then length bytes of
+ *          short idLength, id (UTF-8), short nameLength, name (UTF-8), int quantity, double price
+ * </pre>
+ *
+ * Records are length-prefixed so a reader can skip fields added by a later version.
+ */
+public final class InventoryFileFormat {
+    static final int MAGIC = 0x53464956; // "SFIV"
+    static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 4;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private InventoryFileFormat() {
+    }
+
+    /** True if the file starts with the Java serialization stream magic (pre-binary format). */
+    public static boolean isLegacySerialized(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return in.read() == 0xAC && in.read() == 0xED;
+        }
+    }
+
+    /**
+     * Writes a complete snapshot to a temporary file, forces it to disk and then renames it
+     * over the target, so a crash leaves either the old or the new snapshot, never a torn one.
+     */
+    public static void write(Path file, Iterable<InventoryItem> items, int count) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.putInt(MAGIC).putShort(VERSION).putInt(count);
+            for (InventoryItem item : items) {
+                byte[] id = encode(item.getId());
+                byte[] name = encode(item.getName());
+                int length = 2 + id.length + 2 + name.length + 4 + 8;
+                if (buffer.remaining() < 4 + length) {
+                    drain(channel, buffer);
+                    if (buffer.capacity() < 4 + length) {
+                        buffer = ByteBuffer.allocate(4 + length); // Oversized record
+                    }
+                }
+                buffer.putInt(length);
+                buffer.putShort((short) id.length).put(id);
+                buffer.putShort((short) name.length).put(name);
+                buffer.putInt(item.getQuantity());
+                buffer.putDouble(item.getPrice());
+            }
+            drain(channel, buffer);
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /** Reads every record in file order and hands it to the consumer. Returns the number of items read. */
+    public static int read(Path file, Consumer<InventoryItem> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.limit(0); // Nothing read yet
+            if (!fill(channel, buffer, HEADER_SIZE)) {
+                throw new IOException("Truncated inventory header");
+            }
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an inventory data file");
+            }
+            short version = buffer.getShort();
+            if (version > VERSION) {
+                throw new IOException("Unsupported inventory file version " + version);
+            }
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                if (!fill(channel, buffer, 4)) {
+                    throw new IOException("Truncated inventory file: expected " + count + " items, found " + i);
+                }
+                int length = buffer.getInt();
+                if (buffer.capacity() < length) {
+                    buffer = grow(buffer, length);
+                }
+                if (!fill(channel, buffer, length)) {
+                    throw new IOException("Truncated inventory record " + i);
+                }
+                int end = buffer.position() + length;
+                String id = readString(buffer);
+                String name = readString(buffer);
+                int quantity = buffer.getInt();
+                double price = buffer.getDouble();
+                buffer.position(end); // Skip fields written by newer versions
+                consumer.accept(new InventoryItem(id, name, quantity, price));
+            }
+            return count;
+        }
+    }
+
+    private static byte[] encode(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Field too long for inventory file: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Makes sure at least 'needed' bytes are readable, refilling from the channel if necessary
+    private static boolean fill(FileChannel channel, ByteBuffer buffer, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < needed) {
+            if (channel.read(buffer) < 0) {
+                buffer.flip();
+                return false;
+            }
+        }
+        buffer.flip();
+        return true;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        ByteBuffer bigger = ByteBuffer.allocate(needed);
+        bigger.put(buffer);
+        bigger.flip();
+        return bigger;
+    }
+}
@@ -0,0 +1,208 @@
+package service;
+
+import model.InventoryItem;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of inventory mutations.
+ * Every add, update and delete is written as one small record so that a change
+ * costs a single append instead of rewriting the whole snapshot file.
+ * Appends are buffered; {@link #flush()} hands them to the OS and {@link #sync()}
+ * forces them to disk, so many records can share one group commit.
+ *
+ * Each record is framed as int length, int CRC32 of the payload, then the payload
+ * (byte op, UTF id and, for adds and updates, UTF name, int quantity, double price).
+ * Replay stops at the first torn or corrupt record and cuts the file back to the last
+ * good one, so later appends never land behind garbage.
+ */
+public class InventoryJournal implements Closeable {
+    private static final byte OP_ADD = 'A';
+    private static final byte OP_UPDATE = 'U';
+    private static final byte OP_DELETE = 'D';
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_RECORD_SIZE = 1 + 3 * (2 + 0xFFFF) + 4 + 8; // Three writeUTF fields at most
+
+    private final File file;
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private int recordCount;
+    private int unflushedCount;
+    // Payload of the record being written, framed with its length and checksum when complete
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+    private final DataOutputStream payloadOut = new DataOutputStream(payload);
+    private final CRC32 crc = new CRC32();
+
+    public InventoryJournal(String fileName) {
+        this.file = new File(fileName);
+    }
+
+    public synchronized void appendAdd(InventoryItem item) throws IOException {
+        writeItemRecord(OP_ADD, item);
+    }
+
+    public synchronized void appendUpdate(InventoryItem item) throws IOException {
+        writeItemRecord(OP_UPDATE, item);
+    }
+
+    public synchronized void appendDelete(String id) throws IOException {
+        payload.reset();
+        payloadOut.writeByte(OP_DELETE);
+        payloadOut.writeUTF(id);
+        writeRecord();
+    }
+
+    private void writeItemRecord(byte op, InventoryItem item) throws IOException {
+        payload.reset();
+        payloadOut.writeByte(op);
+        payloadOut.writeUTF(item.getId());
+        payloadOut.writeUTF(item.getName());
+        payloadOut.writeInt(item.getQuantity());
+        payloadOut.writeDouble(item.getPrice());
+        writeRecord();
+    }
+
+    // Encoded completely before anything reaches the file, so a field that cannot be written leaves no partial record
+    private void writeRecord() throws IOException {
+        crc.reset();
+        crc.update(payload.toByteArray());
+        DataOutputStream stream = stream();
+        stream.writeInt(payload.size());
+        stream.writeInt((int) crc.getValue());
+        payload.writeTo(stream);
+        recordCount++;
+        unflushedCount++;
+    }
+
+    /** Writes buffered records to the file. They survive a JVM crash but not a power loss. */
+    public synchronized void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+        unflushedCount = 0;
+    }
+
+    /** Writes buffered records and forces them to the storage device (fsync). */
+    public synchronized void sync() throws IOException {
+        if (out != null) {
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        unflushedCount = 0;
+    }
+
+    /** Number of records appended since the last flush or sync. */
+    public synchronized int getUnflushedCount() {
+        return unflushedCount;
+    }
+
+    /**
+     * Replays every complete record onto the given map (keyed by item ID).
+     * Adds and updates carry the full item, so replaying over a snapshot that already
+     * contains some of these changes still ends in the same state.
+     * A torn or corrupt record (crash mid-append) and everything after it is cut off.
+     * Call before the first append.
+     */
+    public synchronized int replay(Map<String, InventoryItem> items) throws IOException {
+        int replayed = 0;
+        if (!file.exists() || file.length() == 0) {
+            recordCount = 0;
+            return 0;
+        }
+        long valid = 0; // End of the last complete record
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break; // Clean end of journal
+                }
+                try {
+                    int checksum = in.readInt();
+                    if (length < 3 || length > MAX_RECORD_SIZE) {
+                        throw new IOException("bad record length " + length);
+                    }
+                    byte[] record = new byte[length];
+                    in.readFully(record);
+                    crc.reset();
+                    crc.update(record);
+                    if ((int) crc.getValue() != checksum) {
+                        throw new IOException("checksum mismatch");
+                    }
+                    apply(new DataInputStream(new ByteArrayInputStream(record)), items);
+                } catch (IOException e) {
+                    System.err.println("Ignoring bad journal record at offset " + valid + " of " + file.getName()
+                            + " (" + (e instanceof EOFException ? "incomplete record" : e.getMessage()) + ")");
+                    break;
+                }
+                valid += 8 + length;
+                replayed++;
+            }
+        }
+        if (file.length() > valid) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        recordCount = replayed;
+        return replayed;
+    }
+
+    private static void apply(DataInputStream record, Map<String, InventoryItem> items) throws IOException {
+        byte op = record.readByte();
+        String id = record.readUTF();
+        if (op == OP_DELETE) {
+            items.remove(id);
+        } else if (op == OP_ADD || op == OP_UPDATE) {
+            String name = record.readUTF();
+            int quantity = record.readInt();
+            double price = record.readDouble();
+            InventoryItem existing = items.get(id);
+            if (existing != null) {
+                existing.setName(name);
+                existing.setQuantity(quantity);
+                existing.setPrice(price);
+            } else {
+                items.put(id, new InventoryItem(id, name, quantity, price));
+            }
+        } else {
+            throw new IOException("unknown record type " + op);
+        }
+    }
+
+    /** Number of records currently in the journal, used to decide when to compact. */
+    public synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    /** Empties the journal once its contents are covered by a fresh snapshot. */
+    public synchronized void reset() throws IOException {
+        close();
+        new FileOutputStream(file).close(); // Truncate
+        recordCount = 0;
+        unflushedCount = 0;
+    }
+
+    private DataOutputStream stream() throws IOException {
+        if (out == null) {
+            fileOut = new FileOutputStream(file, true);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut, BUFFER_SIZE));
+        }
+        return out;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+            fileOut = null;
+        }
+    }
+}
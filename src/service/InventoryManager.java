@@ -3,98 +3,514 @@ package service;
 import model.InventoryItem;
 
 import java.io.*;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
-public class InventoryManager {
-    private List<InventoryItem> inventory;
+/**
+ * In-memory inventory backed by a snapshot file plus a mutation journal.
+ * Journal records are written behind: they are buffered and group-committed (with fsync)
+ * once the flush interval elapses or the batch size is reached, unless a call asks for
+ * a stronger {@link Durability}. Call {@link #close()} before exiting.
+ *
+ * {@link #openMapped} selects the other storage mode, for catalogs larger than the heap:
+ * records stay in a {@link MappedInventoryStore} and are decoded on demand.
+ */
+public class InventoryManager implements Closeable {
+    // Keyed by item ID; LinkedHashMap keeps insertion order for getAllItems()
+    private Map<String, InventoryItem> inventory;
     private static final String DATA_FILE = "inventory.dat";
+    private static final String JOURNAL_FILE = "inventory.journal";
+    // Number of journal records after which the journal is folded into a new snapshot
+    private static final int COMPACTION_THRESHOLD = 1000;
+    // Write-behind window defaults
+    private static final long FLUSH_INTERVAL_MILLIS = 200;
+    private static final int MAX_BATCH_SIZE = 512;
+
+    private final String dataFile;
+    private final InventoryJournal journal;
+    private final NGramIndex searchIndex = new NGramIndex();
+    private final RangeIndex<Integer> quantityIndex = new RangeIndex<>();
+    private final RangeIndex<Double> priceIndex = new RangeIndex<>();
+    private final InventoryColumns columns = new InventoryColumns();
+    private final int maxBatchSize;
+    private final Durability defaultDurability;
+    private final ScheduledExecutorService flusher;
+    private final MappedInventoryStore mapped; // Null unless opened with openMapped()
 
     public InventoryManager() {
-        inventory = new ArrayList<>();
+        this(DATA_FILE, JOURNAL_FILE);
+    }
+
+    public InventoryManager(String dataFile, String journalFile) {
+        this(dataFile, journalFile, FLUSH_INTERVAL_MILLIS, MAX_BATCH_SIZE, Durability.DEFERRED);
+    }
+
+    /**
+     * @param flushIntervalMillis longest time a deferred mutation waits before its group commit
+     * @param maxBatchSize        number of deferred mutations that triggers a group commit right away
+     * @param defaultDurability   durability of the mutation methods that don't take one
+     */
+    public InventoryManager(String dataFile, String journalFile, long flushIntervalMillis, int maxBatchSize,
+                            Durability defaultDurability) {
+        this.dataFile = dataFile;
+        this.journal = new InventoryJournal(journalFile);
+        this.maxBatchSize = maxBatchSize;
+        this.defaultDurability = defaultDurability;
+        this.mapped = null;
+        inventory = new LinkedHashMap<>();
         loadInventory(); // Load data when manager is initialized
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "inventory-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::groupCommit, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private InventoryManager(MappedInventoryStore mapped) {
+        this.mapped = mapped;
+        this.dataFile = null;
+        this.journal = null;
+        this.maxBatchSize = 0;
+        this.defaultDurability = Durability.DEFERRED;
+        this.flusher = null;
+        inventory = new LinkedHashMap<>(); // Stays empty: items live in the mapping
+    }
+
+    /**
+     * Opens the inventory in mapped mode: items stay in fixed-size slots of {@code mappedFile}
+     * instead of on the heap, so startup only reads the IDs. Changes are written in place
+     * rather than journaled, and are forced to disk by {@link #flush()}, {@link #close()} and
+     * {@link Durability#SYNCED} calls. Only the ID index is held in memory, so search, range
+     * queries and {@link #getColumns()} scan the mapping, and items handed out are copies.
+     */
+    public static InventoryManager openMapped(String mappedFile) throws IOException {
+        return new InventoryManager(new MappedInventoryStore(Paths.get(mappedFile)));
     }
 
     public boolean addItem(InventoryItem item) {
+        return addItem(item, defaultDurability);
+    }
+
+    public boolean addItem(InventoryItem item, Durability durability) {
+        if (mapped != null) {
+            try {
+                if (!mapped.addItem(item)) {
+                    return false;
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing mapped inventory: " + e.getMessage());
+                return false;
+            }
+            forceIfSynced(durability);
+            return true;
+        }
         // Check for duplicate ID
-        if (inventory.stream().anyMatch(i -> i.getId().equals(item.getId()))) {
+        if (inventory.containsKey(item.getId())) {
             return false; // Item with this ID already exists
         }
-        inventory.add(item);
-        saveInventory();
+        inventory.put(item.getId(), item);
+        indexItem(item);
+        try {
+            journal.appendAdd(item);
+        } catch (IOException e) {
+            System.err.println("Error writing inventory journal: " + e.getMessage());
+        }
+        commit(durability);
         return true;
     }
 
+    /**
+     * Adds a batch of items and commits it once. Items whose ID is already present are skipped.
+     * Large batches are written straight into a new snapshot instead of the journal, and
+     * journaled like small ones if the snapshot cannot be written.
+     *
+     * @return the number of items actually added
+     */
+    public int addItems(Collection<InventoryItem> items, Durability durability) {
+        if (mapped != null) {
+            int added = 0;
+            for (InventoryItem item : items) {
+                if (addItem(item, Durability.DEFERRED)) {
+                    added++;
+                }
+            }
+            forceIfSynced(durability);
+            return added;
+        }
+        List<InventoryItem> added = new ArrayList<>(items.size());
+        for (InventoryItem item : items) {
+            if (inventory.putIfAbsent(item.getId(), item) == null) {
+                indexItem(item);
+                added.add(item);
+            }
+        }
+        if (added.isEmpty()) {
+            return 0;
+        }
+        if (added.size() >= COMPACTION_THRESHOLD && compactNow()) {
+            return added.size(); // One snapshot write covered the whole batch
+        }
+        try {
+            for (InventoryItem item : added) {
+                journal.appendAdd(item);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing inventory journal: " + e.getMessage());
+        }
+        commit(durability);
+        return added.size();
+    }
+
     public boolean updateItem(String id, String newName, int newQuantity, double newPrice) {
-        Optional<InventoryItem> itemOptional = inventory.stream()
-                .filter(i -> i.getId().equals(id))
-                .findFirst();
+        return updateItem(id, newName, newQuantity, newPrice, defaultDurability);
+    }
 
-        if (itemOptional.isPresent()) {
-            InventoryItem item = itemOptional.get();
+    public boolean updateItem(String id, String newName, int newQuantity, double newPrice, Durability durability) {
+        if (mapped != null) {
+            try {
+                if (!mapped.updateItem(id, newName, newQuantity, newPrice)) {
+                    return false;
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing mapped inventory: " + e.getMessage());
+                return false;
+            }
+            forceIfSynced(durability);
+            return true;
+        }
+        InventoryItem item = inventory.get(id);
+        if (item != null) {
+            quantityIndex.remove(item.getQuantity(), id);
+            priceIndex.remove(item.getPrice(), id);
             item.setName(newName);
             item.setQuantity(newQuantity);
             item.setPrice(newPrice);
-            saveInventory();
+            searchIndex.update(id, newName);
+            quantityIndex.add(newQuantity, id);
+            priceIndex.add(newPrice, id);
+            columns.update(id, newName, newQuantity, newPrice);
+            try {
+                journal.appendUpdate(item);
+            } catch (IOException e) {
+                System.err.println("Error writing inventory journal: " + e.getMessage());
+            }
+            commit(durability);
             return true;
         }
         return false; // Item not found
     }
 
     public boolean deleteItem(String id) {
-        boolean removed = inventory.removeIf(item -> item.getId().equals(id));
+        return deleteItem(id, defaultDurability);
+    }
+
+    public boolean deleteItem(String id, Durability durability) {
+        if (mapped != null) {
+            try {
+                if (!mapped.deleteItem(id)) {
+                    return false;
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing mapped inventory: " + e.getMessage());
+                return false;
+            }
+            forceIfSynced(durability);
+            return true;
+        }
+        InventoryItem item = inventory.remove(id);
+        boolean removed = item != null;
         if (removed) {
-            saveInventory();
+            searchIndex.remove(id);
+            quantityIndex.remove(item.getQuantity(), id);
+            priceIndex.remove(item.getPrice(), id);
+            columns.remove(id);
+            try {
+                journal.appendDelete(id);
+            } catch (IOException e) {
+                System.err.println("Error writing inventory journal: " + e.getMessage());
+            }
+            commit(durability);
         }
         return removed;
     }
 
     public List<InventoryItem> getAllItems() {
-        return new ArrayList<>(inventory); // Return a copy to prevent external modification
+        if (mapped != null) {
+            return mapped.getAllItems().collect(Collectors.toList());
+        }
+        return new ArrayList<>(inventory.values()); // Return a copy to prevent external modification
+    }
+
+    /** Visits every item in insertion order (slot order when mapped) without copying the inventory. */
+    public void forEachItem(Consumer<? super InventoryItem> action) {
+        if (mapped != null) {
+            mapped.getAllItems().forEach(action);
+            return;
+        }
+        inventory.values().forEach(action);
+    }
+
+    public int size() {
+        return mapped != null ? mapped.size() : inventory.size();
     }
 
     public Optional<InventoryItem> getItemById(String id) {
-        return inventory.stream()
-                .filter(item -> item.getId().equals(id))
-                .findFirst();
+        if (mapped != null) {
+            try {
+                return mapped.getItemById(id);
+            } catch (IOException e) {
+                System.err.println("Error reading mapped inventory: " + e.getMessage());
+                return Optional.empty();
+            }
+        }
+        return Optional.ofNullable(inventory.get(id));
     }
 
     public List<InventoryItem> searchItems(String query) {
-        String lowerCaseQuery = query.toLowerCase();
-        return inventory.stream()
-                .filter(item -> item.getName().toLowerCase().contains(lowerCaseQuery) ||
-                        item.getId().toLowerCase().contains(lowerCaseQuery))
+        if (mapped != null) {
+            String lowerQuery = query.toLowerCase();
+            return mapped.getAllItems()
+                    .filter(item -> item.getName().toLowerCase().contains(lowerQuery)
+                            || item.getId().toLowerCase().contains(lowerQuery))
+                    .collect(Collectors.toList());
+        }
+        // Case-insensitive substring match on name or ID, answered from the trigram index
+        return searchIndex.search(query).stream()
+                .map(inventory::get)
+                .collect(Collectors.toList());
+    }
+
+    /** Items whose quantity is strictly below {@code threshold}, lowest quantity first. */
+    public List<InventoryItem> itemsWithQuantityBelow(int threshold) {
+        if (mapped != null) {
+            return mapped.getAllItems()
+                    .filter(item -> item.getQuantity() < threshold)
+                    .sorted(Comparator.comparingInt(InventoryItem::getQuantity))
+                    .collect(Collectors.toList());
+        }
+        return quantityIndex.below(threshold).stream()
+                .map(inventory::get)
+                .collect(Collectors.toList());
+    }
+
+    /** Items priced between {@code minPrice} and {@code maxPrice} inclusive, cheapest first. */
+    public List<InventoryItem> itemsInPriceRange(double minPrice, double maxPrice) {
+        if (mapped != null) {
+            return mapped.getAllItems()
+                    .filter(item -> item.getPrice() >= minPrice && item.getPrice() <= maxPrice)
+                    .sorted(Comparator.comparingDouble(InventoryItem::getPrice))
+                    .collect(Collectors.toList());
+        }
+        return priceIndex.between(minPrice, maxPrice).stream()
+                .map(inventory::get)
                 .collect(Collectors.toList());
     }
 
-    private void saveInventory() {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(DATA_FILE))) {
-            oos.writeObject(inventory);
-            System.out.println("Inventory saved to " + DATA_FILE);
+    /**
+     * Columnar view for aggregates (stock value, price extremes, ...), kept in sync with every
+     * mutation. When mapped, a fresh view is built from the mapping on each call.
+     */
+    public InventoryColumns getColumns() {
+        if (mapped != null) {
+            InventoryColumns built = new InventoryColumns();
+            mapped.getAllItems().forEach(built::add);
+            return built;
+        }
+        return columns;
+    }
+
+    /** Durability point: every mutation made so far is forced to disk when this returns. */
+    public void flush() {
+        if (mapped != null) {
+            mapped.force();
+            return;
+        }
+        try {
+            journal.sync();
+        } catch (IOException e) {
+            System.err.println("Error flushing inventory journal: " + e.getMessage());
+        }
+    }
+
+    /** Stops the background flusher and commits everything still pending. */
+    @Override
+    public void close() {
+        if (mapped != null) {
+            try {
+                mapped.close();
+            } catch (IOException e) {
+                System.err.println("Error closing mapped inventory: " + e.getMessage());
+            }
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.err.println("Error closing inventory journal: " + e.getMessage());
+        }
+    }
+
+    private void forceIfSynced(Durability durability) {
+        if (durability == Durability.SYNCED) {
+            mapped.force();
+        }
+    }
+
+    private void commit(Durability durability) {
+        try {
+            if (durability == Durability.SYNCED) {
+                journal.sync();
+            } else if (durability == Durability.WRITTEN) {
+                journal.flush();
+            } else if (journal.getUnflushedCount() >= maxBatchSize) {
+                journal.sync(); // Batch is full: group commit now instead of waiting for the timer
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing inventory journal: " + e.getMessage());
+        }
+        compactIfNeeded();
+    }
+
+    // Runs on the flusher thread at the end of every write-behind window
+    private void groupCommit() {
+        try {
+            if (journal.getUnflushedCount() > 0) {
+                journal.sync();
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing inventory journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Folds the journal into a fresh snapshot once it has grown past the threshold,
+     * so replay on startup stays short.
+     */
+    private void compactIfNeeded() {
+        if (journal.getRecordCount() >= COMPACTION_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /** Writes a full snapshot and empties the journal. Nothing to do when mapped. */
+    public void compact() {
+        if (mapped == null) {
+            compactNow();
+        }
+    }
+
+    // False if the snapshot could not be written, so the journal still holds every change
+    private boolean compactNow() {
+        // The snapshot must be on disk before the journal is truncated; if we crash in
+        // between, replaying the old journal over the new snapshot gives the same state.
+        if (!saveInventory()) {
+            return false;
+        }
+        try {
+            journal.reset();
+        } catch (IOException e) {
+            System.err.println("Error truncating inventory journal: " + e.getMessage());
+        }
+        return true;
+    }
+
+    private boolean saveInventory() {
+        try {
+            InventoryFileFormat.write(Paths.get(dataFile), inventory.values(), inventory.size());
+            return true;
         } catch (IOException e) {
             System.err.println("Error saving inventory: " + e.getMessage());
+            return false;
         }
     }
 
-    @SuppressWarnings("unchecked")
     private void loadInventory() {
-        File file = new File(DATA_FILE);
+        File file = new File(dataFile);
         if (file.exists() && file.length() > 0) {
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(DATA_FILE))) {
-                Object obj = ois.readObject();
-                if (obj instanceof ArrayList) {
-                    inventory = (ArrayList<InventoryItem>) obj;
-                    System.out.println("Inventory loaded from " + DATA_FILE);
+            try {
+                if (InventoryFileFormat.isLegacySerialized(file.toPath())) {
+                    loadLegacyInventory();
+                    // One-time migration: rewrite the snapshot in the binary format
+                    if (saveInventory()) {
+                        System.out.println("Migrated " + dataFile + " to binary format.");
+                    }
+                } else {
+                    InventoryFileFormat.read(file.toPath(), item -> inventory.putIfAbsent(item.getId(), item));
+                    System.out.println("Inventory loaded from " + dataFile);
                 }
             } catch (IOException | ClassNotFoundException e) {
                 System.err.println("Error loading inventory: " + e.getMessage());
                 // If loading fails, start with an empty inventory
-                inventory = new ArrayList<>();
+                inventory = new LinkedHashMap<>();
             }
         } else {
             System.out.println("No existing inventory data found. Starting with empty inventory.");
         }
+        replayJournal();
+        rebuildIndexes();
+    }
+
+    private void rebuildIndexes() {
+        searchIndex.clear();
+        quantityIndex.clear();
+        priceIndex.clear();
+        columns.clear();
+        for (InventoryItem item : inventory.values()) {
+            indexItem(item);
+        }
+    }
+
+    // Adds a new item to the search and range indexes
+    private void indexItem(InventoryItem item) {
+        searchIndex.add(item.getId(), item.getName());
+        quantityIndex.add(item.getQuantity(), item.getId());
+        priceIndex.add(item.getPrice(), item.getId());
+        columns.add(item);
+    }
+
+    // Reads a snapshot written with Java serialization by older versions
+    @SuppressWarnings("unchecked")
+    private void loadLegacyInventory() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(dataFile))) {
+            Object obj = ois.readObject();
+            if (obj instanceof ArrayList) {
+                for (InventoryItem item : (ArrayList<InventoryItem>) obj) {
+                    inventory.putIfAbsent(item.getId(), item);
+                }
+                System.out.println("Inventory loaded from " + dataFile);
+            }
+        }
+    }
+
+    // Applies changes made since the last snapshot
+    private void replayJournal() {
+        try {
+            int replayed = journal.replay(inventory);
+            if (replayed > 0) {
+                System.out.println("Replayed " + replayed + " journal records.");
+            }
+        } catch (IOException e) {
+            System.err.println("Error replaying inventory journal: " + e.getMessage());
+        }
     }
 }
\ No newline at end of file
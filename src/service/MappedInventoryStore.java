@@ -0,0 +1,258 @@
+package service;
+
+import model.InventoryItem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Inventory storage for catalogs that should not live on the heap.
+ * Items are kept in fixed-size slots of a memory-mapped file; only an ID to slot
+ * index is held in memory. Records are decoded on demand and quantity/price
+ * updates are written in place, so a lookup or update touches a single page.
+ * {@link InventoryManager#openMapped} runs the inventory on this store.
+ *
+ * <pre>
+ * header : int magic ("SFIM"), int version, int slotSize, int slotCount
+ * slot   : byte state, byte idLength, id (UTF-8, 64 bytes), short nameLength,
+ *          name (UTF-8, 170 bytes), int quantity, double price
+ * </pre>
+ */
+public class MappedInventoryStore implements Closeable {
+    private static final int MAGIC = 0x5346494D; // "SFIM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    static final int SLOT_SIZE = 256;
+    static final int MAX_ID_BYTES = 64;
+    static final int MAX_NAME_BYTES = 170;
+    private static final int STATE_OFFSET = 0;
+    private static final int ID_LENGTH_OFFSET = 1;
+    private static final int ID_OFFSET = 2;
+    private static final int NAME_LENGTH_OFFSET = ID_OFFSET + MAX_ID_BYTES;
+    private static final int NAME_OFFSET = NAME_LENGTH_OFFSET + 2;
+    private static final int QUANTITY_OFFSET = NAME_OFFSET + MAX_NAME_BYTES;
+    private static final int PRICE_OFFSET = QUANTITY_OFFSET + 4;
+
+    private static final byte FREE = 0;
+    private static final byte USED = 1;
+
+    // The file is mapped in segments so it can grow past the 2 GB limit of a single mapping
+    private static final int SLOTS_PER_SEGMENT = 64 * 1024;
+    private static final long SEGMENT_SIZE = (long) SLOTS_PER_SEGMENT * SLOT_SIZE;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private int slotCount; // High-water mark of slots ever used
+
+    public MappedInventoryStore(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean fresh = channel.size() < HEADER_SIZE;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (fresh) {
+            header.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, SLOT_SIZE).putInt(12, 0);
+        } else {
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a mapped inventory file: " + file);
+            }
+            if (header.getInt(8) != SLOT_SIZE) {
+                throw new IOException("Unsupported slot size " + header.getInt(8) + " in " + file);
+            }
+            slotCount = header.getInt(12);
+        }
+        buildIndex();
+    }
+
+    // Only the state byte and ID of each slot are read, the rest of the record stays unmapped
+    private void buildIndex() throws IOException {
+        for (int slot = 0; slot < slotCount; slot++) {
+            ByteBuffer segment = segmentFor(slot);
+            int base = slotBase(slot);
+            if (segment.get(base + STATE_OFFSET) == USED) {
+                slotById.put(readString(segment, base + ID_OFFSET, segment.get(base + ID_LENGTH_OFFSET) & 0xFF), slot);
+            } else {
+                freeSlots.push(slot);
+            }
+        }
+    }
+
+    public boolean addItem(InventoryItem item) throws IOException {
+        if (slotById.containsKey(item.getId())) {
+            return false; // Item with this ID already exists
+        }
+        byte[] id = encode(item.getId(), MAX_ID_BYTES, "ID");
+        byte[] name = encode(item.getName(), MAX_NAME_BYTES, "name");
+        int slot = freeSlots.isEmpty() ? slotCount : freeSlots.pop();
+        ByteBuffer segment = segmentFor(slot);
+        int base = slotBase(slot);
+        segment.put(base + ID_LENGTH_OFFSET, (byte) id.length);
+        segment.put(base + ID_OFFSET, id);
+        writeName(segment, base, name);
+        segment.putInt(base + QUANTITY_OFFSET, item.getQuantity());
+        segment.putDouble(base + PRICE_OFFSET, item.getPrice());
+        segment.put(base + STATE_OFFSET, USED); // Mark used last so a half-written slot stays free
+        if (slot == slotCount) {
+            slotCount++;
+            header.putInt(12, slotCount);
+        }
+        slotById.put(item.getId(), slot);
+        return true;
+    }
+
+    public boolean updateItem(String id, String newName, int newQuantity, double newPrice) throws IOException {
+        Integer slot = slotById.get(id);
+        if (slot == null) {
+            return false; // Item not found
+        }
+        byte[] name = encode(newName, MAX_NAME_BYTES, "name");
+        ByteBuffer segment = segmentFor(slot);
+        int base = slotBase(slot);
+        writeName(segment, base, name);
+        segment.putInt(base + QUANTITY_OFFSET, newQuantity);
+        segment.putDouble(base + PRICE_OFFSET, newPrice);
+        return true;
+    }
+
+    /** Updates only the quantity field of the record, in place. */
+    public boolean updateQuantity(String id, int newQuantity) throws IOException {
+        Integer slot = slotById.get(id);
+        if (slot == null) {
+            return false;
+        }
+        segmentFor(slot).putInt(slotBase(slot) + QUANTITY_OFFSET, newQuantity);
+        return true;
+    }
+
+    /** Updates only the price field of the record, in place. */
+    public boolean updatePrice(String id, double newPrice) throws IOException {
+        Integer slot = slotById.get(id);
+        if (slot == null) {
+            return false;
+        }
+        segmentFor(slot).putDouble(slotBase(slot) + PRICE_OFFSET, newPrice);
+        return true;
+    }
+
+    public boolean deleteItem(String id) throws IOException {
+        Integer slot = slotById.remove(id);
+        if (slot == null) {
+            return false;
+        }
+        segmentFor(slot).put(slotBase(slot) + STATE_OFFSET, FREE);
+        freeSlots.push(slot);
+        return true;
+    }
+
+    public Optional<InventoryItem> getItemById(String id) throws IOException {
+        Integer slot = slotById.get(id);
+        return slot == null ? Optional.empty() : Optional.of(readItem(slot));
+    }
+
+    public int size() {
+        return slotById.size();
+    }
+
+    /**
+     * Streams the items straight off the mapping in slot order.
+     * Items are decoded one at a time as the stream is consumed; nothing is copied up front.
+     */
+    public Stream<InventoryItem> getAllItems() {
+        Spliterator<InventoryItem> spliterator = new Spliterators.AbstractSpliterator<InventoryItem>(
+                slotById.size(), Spliterator.ORDERED | Spliterator.NONNULL) {
+            private int next;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super InventoryItem> action) {
+                try {
+                    while (next < slotCount) {
+                        int slot = next++;
+                        if (segmentFor(slot).get(slotBase(slot) + STATE_OFFSET) == USED) {
+                            action.accept(readItem(slot));
+                            return true;
+                        }
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException("Error reading mapped inventory: " + e.getMessage(), e);
+                }
+                return false;
+            }
+        };
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    /** Flushes dirty pages of the mapping to disk. */
+    public void force() {
+        header.force();
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private InventoryItem readItem(int slot) throws IOException {
+        ByteBuffer segment = segmentFor(slot);
+        int base = slotBase(slot);
+        String id = readString(segment, base + ID_OFFSET, segment.get(base + ID_LENGTH_OFFSET) & 0xFF);
+        String name = readString(segment, base + NAME_OFFSET, segment.getShort(base + NAME_LENGTH_OFFSET) & 0xFFFF);
+        return new InventoryItem(id, name, segment.getInt(base + QUANTITY_OFFSET), segment.getDouble(base + PRICE_OFFSET));
+    }
+
+    private static void writeName(ByteBuffer segment, int base, byte[] name) {
+        segment.putShort(base + NAME_LENGTH_OFFSET, (short) name.length);
+        segment.put(base + NAME_OFFSET, name);
+    }
+
+    private static String readString(ByteBuffer segment, int offset, int length) {
+        byte[] bytes = new byte[length];
+        segment.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(String value, int maxBytes, String field) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes) {
+            throw new IllegalArgumentException("Item " + field + " too long: at most " + maxBytes + " bytes allowed.");
+        }
+        return bytes;
+    }
+
+    private static int slotBase(int slot) {
+        return (slot % SLOTS_PER_SEGMENT) * SLOT_SIZE;
+    }
+
+    // Maps segments lazily; the file grows one segment at a time
+    private ByteBuffer segmentFor(int slot) throws IOException {
+        int index = slot / SLOTS_PER_SEGMENT;
+        while (segments.size() <= index) {
+            long position = HEADER_SIZE + segments.size() * SEGMENT_SIZE;
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_SIZE));
+        }
+        return segments.get(index);
+    }
+}
@@ -0,0 +1,138 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trigram index over the lowercased ID and name of each item, used for substring search.
+ * A query of three or more characters only looks at the items sharing its rarest
+ * trigram; each candidate is then checked with {@code contains}, so results are
+ * exactly those of a case-insensitive substring scan, in insertion order.
+ */
+public class NGramIndex {
+    static final int N = 3;
+
+    private static class Entry {
+        final long sequence; // Insertion order, kept across updates
+        String lowerId;
+        String lowerName;
+
+        Entry(long sequence, String lowerId, String lowerName) {
+            this.sequence = sequence;
+            this.lowerId = lowerId;
+            this.lowerName = lowerName;
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Map<String, Set<String>> postings = new HashMap<>();
+    private long nextSequence;
+
+    public void add(String id, String name) {
+        Entry entry = new Entry(nextSequence++, id.toLowerCase(), name.toLowerCase());
+        entries.put(id, entry);
+        index(id, entry);
+    }
+
+    public void update(String id, String newName) {
+        Entry entry = entries.get(id);
+        if (entry == null) {
+            add(id, newName);
+            return;
+        }
+        String lowerName = newName.toLowerCase();
+        if (lowerName.equals(entry.lowerName)) {
+            return; // Nothing searchable changed
+        }
+        unindex(id, entry);
+        entry.lowerName = lowerName;
+        index(id, entry);
+    }
+
+    public void remove(String id) {
+        Entry entry = entries.remove(id);
+        if (entry != null) {
+            unindex(id, entry);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        postings.clear();
+    }
+
+    /** IDs whose lowercased ID or name contains the lowercased query, in insertion order. */
+    public List<String> search(String query) {
+        String lowerQuery = query.toLowerCase();
+        List<String> results = new ArrayList<>();
+        if (lowerQuery.length() < N) {
+            // Too short to have a trigram: scan the cached lowercase strings
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                if (matches(e.getValue(), lowerQuery)) {
+                    results.add(e.getKey());
+                }
+            }
+            return results;
+        }
+
+        Set<String> smallest = null;
+        for (int i = 0; i + N <= lowerQuery.length(); i++) {
+            Set<String> posting = postings.get(lowerQuery.substring(i, i + N));
+            if (posting == null) {
+                return results; // Some trigram occurs nowhere, so nothing can match
+            }
+            if (smallest == null || posting.size() < smallest.size()) {
+                smallest = posting;
+            }
+        }
+        for (String id : smallest) {
+            if (matches(entries.get(id), lowerQuery)) {
+                results.add(id);
+            }
+        }
+        results.sort(Comparator.comparingLong(id -> entries.get(id).sequence));
+        return results;
+    }
+
+    private static boolean matches(Entry entry, String lowerQuery) {
+        return entry.lowerName.contains(lowerQuery) || entry.lowerId.contains(lowerQuery);
+    }
+
+    private void index(String id, Entry entry) {
+        for (String gram : grams(entry)) {
+            postings.computeIfAbsent(gram, g -> new HashSet<>()).add(id);
+        }
+    }
+
+    private void unindex(String id, Entry entry) {
+        for (String gram : grams(entry)) {
+            Set<String> posting = postings.get(gram);
+            if (posting != null) {
+                posting.remove(id);
+                if (posting.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    private static Set<String> grams(Entry entry) {
+        Set<String> grams = new HashSet<>();
+        addGrams(entry.lowerId, grams);
+        addGrams(entry.lowerName, grams);
+        return grams;
+    }
+
+    // Also used by ConcurrentInventoryManager, which keeps its postings in the snapshot
+    static void addGrams(String text, Set<String> grams) {
+        for (int i = 0; i + N <= text.length(); i++) {
+            grams.add(text.substring(i, i + N));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Sorted secondary index from a field value to the IDs of the items holding it.
+ * Range lookups cost O(log n + k) for k matching items.
+ */
+public class RangeIndex<K extends Comparable<K>> {
+    private final TreeMap<K, Set<String>> idsByKey = new TreeMap<>();
+
+    public void add(K key, String id) {
+        idsByKey.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(id);
+    }
+
+    public void remove(K key, String id) {
+        Set<String> ids = idsByKey.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                idsByKey.remove(key);
+            }
+        }
+    }
+
+    public void clear() {
+        idsByKey.clear();
+    }
+
+    /** IDs with a key strictly below {@code bound}, in ascending key order. */
+    public List<String> below(K bound) {
+        return collect(idsByKey.headMap(bound, false));
+    }
+
+    /** IDs with a key between {@code from} and {@code to}, both inclusive, in ascending key order. */
+    public List<String> between(K from, K to) {
+        if (from.compareTo(to) > 0) {
+            return new ArrayList<>();
+        }
+        return collect(idsByKey.subMap(from, true, to, true));
+    }
+
+    private static <K> List<String> collect(NavigableMap<K, Set<String>> range) {
+        List<String> ids = new ArrayList<>();
+        for (Map.Entry<K, Set<String>> entry : range.entrySet()) {
+            ids.addAll(entry.getValue());
+        }
+        return ids;
+    }
+}
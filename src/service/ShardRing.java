@@ -0,0 +1,52 @@
+package service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Consistent hashing of account numbers onto shards. Every shard owns a number of virtual
+ * points on a 32-bit ring and an account belongs to the first point at or after its hash.
+ * The hash only depends on the account number's bytes, so every process computes the same
+ * placement, and adding a shard moves only about 1/N of the accounts.
+ */
+public class ShardRing {
+    private static final int POINTS_PER_SHARD = 128;
+
+    private final TreeMap<Integer, Integer> ring = new TreeMap<>();
+    private final int shards;
+
+    public ShardRing(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("At least one shard is required.");
+        }
+        this.shards = shards;
+        for (int shard = 0; shard < shards; shard++) {
+            for (int point = 0; point < POINTS_PER_SHARD; point++) {
+                ring.put(hash("shard-" + shard + "#" + point), shard);
+            }
+        }
+    }
+
+    public int shardCount() {
+        return shards;
+    }
+
+    public int shardFor(String accNo) {
+        Map.Entry<Integer, Integer> owner = ring.ceilingEntry(hash(accNo));
+        return (owner != null ? owner : ring.firstEntry()).getValue();
+    }
+
+    // 32-bit FNV-1a over UTF-8 with a final avalanche, stable across JVMs
+    static int hash(String key) {
+        int h = 0x811c9dc5;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,283 @@
+package service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Router for a bank partitioned across {@link BankShardServer}s. Account numbers are mapped
+ * to shards by a {@link ShardRing}; every operation is forwarded over loopback TCP to the
+ * owning shard, and validation errors come back as the same IllegalArgumentExceptions the
+ * single-process {@link BankService} throws.
+ *
+ * Transfers within one shard are a single request. Across shards the router runs a two-phase
+ * commit: prepare the debit on the source shard, prepare the credit on the target shard, then
+ * commit both, or abort both if either prepare fails. Once decided, COMMIT or ABORT is always
+ * sent to both shards and resent until each acknowledges it; a shard that stays unreachable gets
+ * the decision queued, resent by later cross-shard transfers and on {@link #close()}, and logged
+ * to stderr. Nothing is logged durably on the router, so a router crash between the two phases
+ * still needs manual reconciliation.
+ */
+public class ShardedBankService implements Closeable {
+    // Sends of a decision before it is queued for later, with exponential backoff from FINISH_BACKOFF_MILLIS
+    private static final int FINISH_ATTEMPTS = 5;
+    private static final long FINISH_BACKOFF_MILLIS = 10;
+
+    private interface Request {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static final class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket(address.getAddress(), address.getPort());
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already broken
+            }
+        }
+    }
+
+    private final ShardRing ring;
+    private final InetSocketAddress[] shards;
+    private final List<Queue<Connection>> idle = new ArrayList<>();
+    private final List<BankShardServer> owned = new ArrayList<>();
+    // Random high bits keep transaction IDs from different routers apart
+    private final long txBase = (long) ThreadLocalRandom.current().nextInt() << 32;
+    private final AtomicLong txCounter = new AtomicLong();
+    // Decisions no shard has acknowledged yet: {shard, op, txId}
+    private final Queue<long[]> undelivered = new ConcurrentLinkedQueue<>();
+
+    /** Routes to shards that are already running, e.g. separate JVMs; shard i owns ring slot i. */
+    public ShardedBankService(List<InetSocketAddress> shards) {
+        this.ring = new ShardRing(shards.size());
+        this.shards = shards.toArray(new InetSocketAddress[0]);
+        for (int i = 0; i < shards.size(); i++) {
+            idle.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Starts {@code shardCount} shards in this JVM, each on its own loopback port, and routes
+     * to them. With a data directory every shard keeps a ledger in {@code shard-<i>} below it.
+     */
+    public static ShardedBankService startLocal(int shardCount, Path dataDir) throws IOException {
+        List<BankShardServer> servers = new ArrayList<>();
+        List<InetSocketAddress> addresses = new ArrayList<>();
+        try {
+            for (int i = 0; i < shardCount; i++) {
+                BankShardServer server = dataDir == null ? new BankShardServer()
+                        : BankShardServer.withLedger(dataDir.resolve("shard-" + i));
+                servers.add(server);
+                addresses.add(server.getAddress());
+            }
+        } catch (IOException e) {
+            for (BankShardServer server : servers) {
+                server.close();
+            }
+            throw e;
+        }
+        ShardedBankService router = new ShardedBankService(addresses);
+        router.owned.addAll(servers);
+        return router;
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public int shardOf(String accNo) {
+        return ring.shardFor(accNo);
+    }
+
+    public void createAccount(String accNo, String holder, double openingBalance) {
+        call(shardOf(accNo), BankShardServer.CREATE, out -> {
+            out.writeUTF(accNo);
+            out.writeUTF(holder);
+            out.writeDouble(openingBalance);
+        });
+    }
+
+    public void deposit(String accNo, double amount) {
+        call(shardOf(accNo), BankShardServer.DEPOSIT, out -> {
+            out.writeUTF(accNo);
+            out.writeDouble(amount);
+        });
+    }
+
+    public void withdraw(String accNo, double amount) {
+        call(shardOf(accNo), BankShardServer.WITHDRAW, out -> {
+            out.writeUTF(accNo);
+            out.writeDouble(amount);
+        });
+    }
+
+    public double checkBalance(String accNo) {
+        return call(shardOf(accNo), BankShardServer.BALANCE, out -> out.writeUTF(accNo));
+    }
+
+    /** Atomic within a shard; across shards see the two-phase protocol in the class comment. */
+    public void transfer(String fromAccNo, String toAccNo, double amount) {
+        int source = shardOf(fromAccNo);
+        int target = shardOf(toAccNo);
+        if (source == target) {
+            call(source, BankShardServer.TRANSFER, out -> {
+                out.writeUTF(fromAccNo);
+                out.writeUTF(toAccNo);
+                out.writeDouble(amount);
+            });
+            return;
+        }
+        redeliver();
+        long txId = txBase + txCounter.incrementAndGet();
+        boolean creditSent = false;
+        boolean prepared = false;
+        try {
+            call(source, BankShardServer.PREPARE_DEBIT, out -> {
+                out.writeLong(txId);
+                out.writeUTF(fromAccNo);
+                out.writeUTF(toAccNo);
+                out.writeDouble(amount);
+            });
+            creditSent = true;
+            call(target, BankShardServer.PREPARE_CREDIT, out -> {
+                out.writeLong(txId);
+                out.writeUTF(toAccNo);
+                out.writeUTF(fromAccNo);
+                out.writeDouble(amount);
+            });
+            prepared = true;
+        } finally {
+            if (!prepared) {
+                // A prepare whose reply was lost may still have been applied; aborting an unknown ID is a no-op
+                if (creditSent) {
+                    finish(target, BankShardServer.ABORT, txId);
+                }
+                finish(source, BankShardServer.ABORT, txId);
+            }
+        }
+        try {
+            finish(target, BankShardServer.COMMIT, txId);
+        } finally {
+            finish(source, BankShardServer.COMMIT, txId);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        redeliver();
+        for (long[] decision : undelivered) {
+            System.err.println("Transfer " + decision[2] + ": shard " + decision[0] + " never acknowledged "
+                    + opName((byte) decision[1]) + "; resend it to reconcile.");
+        }
+        for (Queue<Connection> connections : idle) {
+            Connection connection;
+            while ((connection = connections.poll()) != null) {
+                connection.close();
+            }
+        }
+        for (BankShardServer server : owned) {
+            server.close();
+        }
+    }
+
+    // Sends a COMMIT or ABORT until the shard acknowledges it (shards apply each at most once),
+    // otherwise queues it for redelivery. Never throws, so the other shard still gets its decision.
+    private void finish(int shard, byte op, long txId) {
+        RuntimeException failure = null;
+        for (int attempt = 0; attempt < FINISH_ATTEMPTS; attempt++) {
+            try {
+                call(shard, op, out -> out.writeLong(txId));
+                return;
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            try {
+                Thread.sleep(FINISH_BACKOFF_MILLIS << attempt);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        undelivered.add(new long[]{shard, op, txId});
+        System.err.println("Transfer " + txId + ": shard " + shard + " did not acknowledge " + opName(op)
+                + ", will resend: " + failure.getMessage());
+    }
+
+    // One more attempt for every queued decision; those that fail again stay queued
+    private void redeliver() {
+        for (int i = undelivered.size(); i > 0; i--) {
+            long[] decision = undelivered.poll();
+            if (decision == null) {
+                return;
+            }
+            try {
+                call((int) decision[0], (byte) decision[1], out -> out.writeLong(decision[2]));
+            } catch (RuntimeException e) {
+                undelivered.add(decision);
+            }
+        }
+    }
+
+    private static String opName(byte op) {
+        return op == BankShardServer.COMMIT ? "COMMIT" : "ABORT";
+    }
+
+    // Borrows a pooled connection to the shard; a connection that failed is dropped, not returned
+    private double call(int shard, byte op, Request request) {
+        Connection connection = idle.get(shard).poll();
+        double result = 0;
+        String error = null;
+        try {
+            if (connection == null) {
+                connection = new Connection(shards[shard]);
+            }
+            connection.out.writeByte(op);
+            request.write(connection.out);
+            connection.out.flush();
+            if (connection.in.readByte() == BankShardServer.OK) {
+                result = connection.in.readDouble();
+            } else {
+                error = connection.in.readUTF();
+            }
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.close();
+            }
+            throw new UncheckedIOException("Shard " + shard + " at " + shards[shard] + " is unavailable", e);
+        } catch (RuntimeException | Error e) {
+            if (connection != null) {
+                connection.close(); // May be half-written, so it cannot be reused
+            }
+            throw e;
+        }
+        idle.get(shard).add(connection);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+        return result;
+    }
+}
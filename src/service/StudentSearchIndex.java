@@ -0,0 +1,343 @@
+package service;
+
+import util.IntObjectHashMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * Ranked search over student names and courses.
+ *
+ * Both fields are split into lowercase words, and every word goes into one prefix trie whose
+ * nodes hold the IDs (and fields) the word occurs in. A query is tokenized the same way and
+ * each query word is matched three ways, best first: exactly, as the prefix of longer words
+ * (type-ahead, at most {@link #MAX_EXPANSIONS} completions, shortest first) and, for words of
+ * four letters or more, within a small edit distance (typos, swapped letters). A student's score is the sum
+ * over query words of its best match, and name matches count double. Only the postings of
+ * matched words are visited, and the best {@code limit} students are kept in a bounded heap.
+ *
+ * Updated incrementally; not thread-safe.
+ */
+public class StudentSearchIndex {
+    static final int MAX_EXPANSIONS = 64;
+    private static final byte NAME = 1;
+    private static final byte COURSE = 2;
+    private static final Byte[] FIELDS = {null, NAME, COURSE, NAME | COURSE};
+
+    private static final class Node {
+        char[] labels = new char[0];
+        Node[] children = new Node[0];
+        IntObjectHashMap<Byte> postings; // Doc -> fields the word occurs in; null while no word ends here
+        int depth;
+
+        Node child(char label) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == label) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        Node addChild(char label) {
+            Node child = new Node();
+            child.depth = depth + 1;
+            labels = Arrays.copyOf(labels, labels.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            labels[labels.length - 1] = label;
+            children[children.length - 1] = child;
+            return child;
+        }
+
+        void removeChild(char label) {
+            for (int i = 0; i < labels.length; i++) {
+                if (labels[i] == label) {
+                    int last = labels.length - 1;
+                    System.arraycopy(labels, i + 1, labels, i, last - i);
+                    System.arraycopy(children, i + 1, children, i, last - i);
+                    labels = Arrays.copyOf(labels, last);
+                    children = Arrays.copyOf(children, last);
+                    return;
+                }
+            }
+        }
+
+        boolean isWord() {
+            return postings != null && !postings.isEmpty();
+        }
+    }
+
+    // An indexed student; doc is its dense internal number, which postings and accumulators use
+    private static final class Doc {
+        final int doc;
+        final String name;
+        final String course;
+
+        Doc(int doc, String name, String course) {
+            this.doc = doc;
+            this.name = name;
+            this.course = course;
+        }
+    }
+
+    private final Node root = new Node();
+    private final IntObjectHashMap<Doc> indexed = new IntObjectHashMap<>(); // Student ID -> doc
+    private int[] studentIds = new int[16];   // Doc -> student ID
+    private int[] freeDocs = new int[16];     // Numbers of removed docs, reused first
+    private int freeCount;
+    private int docCount;                     // High-water mark of doc numbers
+
+    // Reused by search(): per-doc scores for the current word and the whole query, and the docs they touch
+    private float[] wordScores = new float[16];
+    private float[] totalScores = new float[16];
+    private int[] wordDocs = new int[16];
+    private int wordDocCount;
+    private int[] queryDocs = new int[16];
+    private int queryDocCount;
+
+    public void add(int id, String name, String course) {
+        remove(id);
+        int doc;
+        if (freeCount > 0) {
+            doc = freeDocs[--freeCount];
+        } else {
+            doc = docCount++;
+            if (doc == studentIds.length) {
+                int capacity = doc * 2;
+                studentIds = Arrays.copyOf(studentIds, capacity);
+                wordScores = Arrays.copyOf(wordScores, capacity);
+                totalScores = Arrays.copyOf(totalScores, capacity);
+            }
+        }
+        studentIds[doc] = id;
+        indexed.put(id, new Doc(doc, name, course));
+        for (String word : tokenize(name)) {
+            post(word, doc, NAME);
+        }
+        for (String word : tokenize(course)) {
+            post(word, doc, COURSE);
+        }
+    }
+
+    public void update(int id, String name, String course) {
+        Doc old = indexed.get(id);
+        if (old == null || !old.name.equals(name) || !old.course.equals(course)) {
+            add(id, name, course);
+        }
+    }
+
+    public void remove(int id) {
+        Doc old = indexed.remove(id);
+        if (old == null) {
+            return;
+        }
+        List<String> words = tokenize(old.name);
+        words.addAll(tokenize(old.course));
+        for (String word : words) {
+            unpost(word, old.doc);
+        }
+        if (freeCount == freeDocs.length) {
+            freeDocs = Arrays.copyOf(freeDocs, freeCount * 2);
+        }
+        freeDocs[freeCount++] = old.doc;
+    }
+
+    public void clear() {
+        root.labels = new char[0];
+        root.children = new Node[0];
+        indexed.clear();
+        freeCount = 0;
+        docCount = 0;
+    }
+
+    /**
+     * IDs of the best matches for {@code query}, best first; ties go to the lower ID.
+     * Costs time in proportion to the postings of the matched words, not the roster.
+     */
+    public int[] search(String query, int limit) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+        queryDocCount = 0;
+        for (String word : words) {
+            wordDocCount = 0;
+            Node exact = find(word);
+            if (exact != null) {
+                if (exact.isWord()) {
+                    collect(exact, 1.0f);
+                }
+                expand(exact, word.length());
+            }
+            int maxEdits = word.length() >= 8 ? 2 : word.length() >= 4 ? 1 : 0;
+            if (maxEdits > 0) {
+                int[] firstRow = new int[word.length() + 1];
+                for (int i = 0; i < firstRow.length; i++) {
+                    firstRow[i] = i;
+                }
+                for (int i = 0; i < root.labels.length; i++) {
+                    fuzzy(root.children[i], root.labels[i], (char) 0, word, firstRow, null, maxEdits);
+                }
+            }
+            // Each word adds only its best match per student
+            for (int i = 0; i < wordDocCount; i++) {
+                int doc = wordDocs[i];
+                if (totalScores[doc] == 0) {
+                    queryDocs = append(queryDocs, queryDocCount++, doc);
+                }
+                totalScores[doc] += wordScores[doc];
+                wordScores[doc] = 0;
+            }
+        }
+
+        // Min-heap of the best 'limit' docs: the weakest is at the head and is evicted first
+        PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, (a, b) -> totalScores[a] != totalScores[b]
+                ? Float.compare(totalScores[a], totalScores[b]) : Integer.compare(studentIds[b], studentIds[a]));
+        for (int i = 0; i < queryDocCount; i++) {
+            int doc = queryDocs[i];
+            if (top.size() < limit) {
+                top.add(doc);
+            } else if (top.comparator().compare(doc, top.peek()) > 0) {
+                top.poll();
+                top.add(doc);
+            }
+        }
+        int[] ids = new int[top.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = studentIds[top.poll()];
+        }
+        for (int i = 0; i < queryDocCount; i++) {
+            totalScores[queryDocs[i]] = 0;
+        }
+        return ids;
+    }
+
+    /** Splits text into lowercase runs of letters and digits. */
+    static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private void post(String word, int doc, byte field) {
+        Node node = root;
+        for (int i = 0; i < word.length(); i++) {
+            Node next = node.child(word.charAt(i));
+            node = next != null ? next : node.addChild(word.charAt(i));
+        }
+        if (node.postings == null) {
+            node.postings = new IntObjectHashMap<>(1); // Most words belong to a single student
+        }
+        Byte fields = node.postings.get(doc);
+        node.postings.put(doc, FIELDS[(fields == null ? 0 : fields) | field]);
+    }
+
+    // Drops the posting, then every node left with neither postings nor children, so renames and
+    // deletes of unique names do not leave dead branches behind
+    private void unpost(String word, int doc) {
+        Node[] path = new Node[word.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < word.length(); i++) {
+            path[i + 1] = path[i].child(word.charAt(i));
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+        Node node = path[word.length()];
+        if (node.postings == null) {
+            return;
+        }
+        node.postings.remove(doc);
+        if (!node.postings.isEmpty()) {
+            return;
+        }
+        node.postings = null;
+        for (int i = word.length(); i > 0 && path[i].postings == null && path[i].labels.length == 0; i--) {
+            path[i - 1].removeChild(word.charAt(i - 1));
+        }
+    }
+
+    private Node find(String word) {
+        Node node = root;
+        for (int i = 0; i < word.length() && node != null; i++) {
+            node = node.child(word.charAt(i));
+        }
+        return node;
+    }
+
+    // Completions of a query word, breadth first so the shortest come first
+    private void expand(Node from, int queryLength) {
+        Deque<Node> queue = new ArrayDeque<>(Arrays.asList(from.children));
+        int expansions = 0;
+        while (!queue.isEmpty() && expansions < MAX_EXPANSIONS) {
+            Node node = queue.poll();
+            if (node.isWord()) {
+                collect(node, 0.5f + 0.4f * queryLength / node.depth);
+                expansions++;
+            }
+            queue.addAll(Arrays.asList(node.children));
+        }
+    }
+
+    // Walks the trie computing one edit-distance row per node (optimal string alignment, so a swap
+    // of two neighbouring letters is one edit); stops where no row entry can still be close enough
+    private void fuzzy(Node node, char label, char previousLabel, String query, int[] previousRow, int[] olderRow,
+                       int maxEdits) {
+        int[] row = new int[previousRow.length];
+        row[0] = previousRow[0] + 1;
+        int rowMin = row[0];
+        int previousMin = previousRow[0];
+        for (int i = 1; i < row.length; i++) {
+            int substitute = previousRow[i - 1] + (query.charAt(i - 1) == label ? 0 : 1);
+            row[i] = Math.min(substitute, Math.min(row[i - 1] + 1, previousRow[i] + 1));
+            if (olderRow != null && i > 1 && query.charAt(i - 1) == previousLabel && query.charAt(i - 2) == label) {
+                row[i] = Math.min(row[i], olderRow[i - 2] + 1);
+            }
+            rowMin = Math.min(rowMin, row[i]);
+            previousMin = Math.min(previousMin, previousRow[i]);
+        }
+        int distance = row[row.length - 1];
+        if (distance > 0 && distance <= maxEdits && node.isWord()) {
+            collect(node, 0.6f - 0.2f * distance);
+        }
+        if (Math.min(rowMin, previousMin + 1) <= maxEdits) {
+            for (int i = 0; i < node.labels.length; i++) {
+                fuzzy(node.children[i], node.labels[i], label, query, row, previousRow, maxEdits);
+            }
+        }
+    }
+
+    // Raises the current word's score of every doc posted under the node; name matches count double
+    private void collect(Node node, float match) {
+        node.postings.forEachEntry((doc, fields) -> {
+            float score = (fields & NAME) != 0 ? 2 * match : match;
+            if (wordScores[doc] == 0) {
+                wordDocs = append(wordDocs, wordDocCount++, doc);
+            }
+            wordScores[doc] = Math.max(wordScores[doc], score);
+        });
+    }
+
+    private static int[] append(int[] array, int index, int value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, index * 2);
+        }
+        array[index] = value;
+        return array;
+    }
+}
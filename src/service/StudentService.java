@@ -1,30 +1,439 @@
 package service;
 
 import model.Student;
+import util.IntObjectHashMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Student roster indexed by ID (a primitive int map, so no boxing) and by course.
+ * Add, update, delete and lookup by ID are O(1); listing keeps the order students were added.
+ * Change students through {@link #updateStudent} so the course index stays correct.
+ *
+ * Opened on a {@link StudentStore}, every change is appended to the store's log and the roster
+ * is loaded by a background thread. Until it finishes, {@link #getStudentById} is answered
+ * straight from the store; every other call waits for the load. Apart from that loader the
+ * service is not thread-safe. Call {@link #close()} before exiting.
+ */
+public class StudentService implements Closeable {
+    // Log records that are always tolerated before compacting; past that the log may grow to the roster size
+    private static final int MIN_COMPACTION_RECORDS = 1000;
+
+    // A student plus its position in the roster order
+    private static final class Entry {
+        final Student student;
+        int slot;
+
+        Entry(Student student, int slot) {
+            this.student = student;
+            this.slot = slot;
+        }
+    }
+
+    private final IntObjectHashMap<Entry> byId = new IntObjectHashMap<>();
+    private final Map<String, Set<Student>> byCourse = new HashMap<>();
+    private final StudentSearchIndex searchIndex; // Built while loading; null if the roster is never searched
+    private Entry[] order = new Entry[16]; // Insertion order, null where deleted
+    private int orderSize;
+    private volatile StudentStore store; // Null when nothing is persisted
+    private final CompletableFuture<Void> loaded;
+    private final List<Student> rosterView = new RosterView();
+
+    // The roster order as a list; deleted slots are squeezed out the first time it is read after a delete
+    private final class RosterView extends AbstractList<Student> implements RandomAccess {
+        @Override
+        public Student get(int index) {
+            if (orderSize != byId.size()) {
+                squeezeOrder();
+            }
+            return order[Objects.checkIndex(index, orderSize)].student;
+        }
+
+        @Override
+        public int size() {
+            return byId.size();
+        }
+    }
+
+    /** An in-memory roster that is not persisted. */
+    public StudentService() {
+        searchIndex = new StudentSearchIndex();
+        loaded = CompletableFuture.completedFuture(null);
+    }
+
+    /** A roster persisted in {@code dataFile} (snapshot) and {@code logFile} (changes since), loaded in the background. */
+    public StudentService(Path dataFile, Path logFile) {
+        this(dataFile, logFile, true);
+    }
+
+    // Without a search index, for callers that only read the roster out (recovery, conversions)
+    StudentService(Path dataFile, Path logFile, boolean searchable) {
+        searchIndex = searchable ? new StudentSearchIndex() : null;
+        try {
+            store = new StudentStore(dataFile, logFile);
+        } catch (IOException e) {
+            System.err.println("Error opening student storage, changes will not be saved: " + e.getMessage());
+        }
+        loaded = new CompletableFuture<>();
+        if (store == null) {
+            loaded.complete(null);
+            return;
+        }
+        Thread loader = new Thread(this::load, "student-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /** Completes once the whole roster is in memory. */
+    public CompletableFuture<Void> whenLoaded() {
+        return loaded.copy();
+    }
+
+    public boolean isLoaded() {
+        return loaded.isDone();
+    }
+
+    public void awaitLoaded() {
+        loaded.join();
+    }
+
+    public boolean addStudent(Student student) {
+        awaitLoaded();
+        if (!insert(student)) {
+            return false; // Student with this ID already exists
+        }
+        StudentStore current = store;
+        if (current != null) {
+            try {
+                current.appendAdd(student);
+            } catch (IOException e) {
+                System.err.println("Error writing student log: " + e.getMessage());
+            }
+            compactIfNeeded();
+        }
+        return true;
+    }
+
+    /**
+     * Adds a batch of students, skipping IDs that are already present. Large batches are written
+     * straight into a new snapshot instead of the log, or appended to the log if the snapshot
+     * cannot be written. Returns the number of students added.
+     */
+    public int addStudents(Collection<Student> students) {
+        awaitLoaded();
+        List<Student> added = new ArrayList<>(students.size());
+        for (Student student : students) {
+            if (insert(student)) {
+                added.add(student);
+            }
+        }
+        StudentStore current = store;
+        if (current == null || added.isEmpty()) {
+            return added.size();
+        }
+        if (added.size() >= MIN_COMPACTION_RECORDS && writeSnapshot(current)) {
+            return added.size(); // One snapshot write covered the whole batch
+        }
+        try {
+            for (Student student : added) {
+                current.appendAdd(student);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing student log: " + e.getMessage());
+        }
+        compactIfNeeded();
+        return added.size();
+    }
+
+    private boolean insert(Student student) {
+        if (byId.containsKey(student.getId())) {
+            return false;
+        }
+        if (orderSize == order.length) {
+            compactOrder();
+        }
+        Entry entry = new Entry(student, orderSize);
+        order[orderSize++] = entry;
+        byId.put(student.getId(), entry);
+        byCourse.computeIfAbsent(student.getCourse(), c -> new LinkedHashSet<>()).add(student);
+        if (searchIndex != null) {
+            searchIndex.add(student.getId(), student.getName(), student.getCourse());
+        }
+        return true;
+    }
+
+    /** All students in the order they were added. */
+    public List<Student> getAllStudents() {
+        awaitLoaded();
+        List<Student> students = new ArrayList<>(byId.size());
+        forEachStudent(students::add);
+        return students;
+    }
+
+    /**
+     * Read-only view of all students in the order they were added. Reading a row is O(1) and
+     * nothing is copied, so a table can page through it; it reflects later changes, so re-read
+     * it after each one (from the thread that makes them).
+     */
+    public List<Student> studentsView() {
+        awaitLoaded();
+        return rosterView;
+    }
+
+    /** Visits every student in the order they were added, without copying the roster. */
+    public void forEachStudent(Consumer<? super Student> action) {
+        awaitLoaded();
+        for (int i = 0; i < orderSize; i++) {
+            if (order[i] != null) {
+                action.accept(order[i].student);
+            }
+        }
+    }
 
-public class StudentService {
-    private final ArrayList<Student> studentList = new ArrayList<>();
+    public Optional<Student> getStudentById(int id) {
+        StudentStore current = store;
+        if (!loaded.isDone() && current != null) {
+            try {
+                return Optional.ofNullable(current.find(id)); // A copy decoded from the store while loading
+            } catch (IOException e) {
+                System.err.println("Error reading student file, waiting for the roster: " + e.getMessage());
+            }
+        }
+        awaitLoaded();
+        Entry entry = byId.get(id);
+        return entry == null ? Optional.empty() : Optional.of(entry.student);
+    }
 
-    public void addStudent(Student student) {
-        studentList.add(student);
+    /** Students enrolled in exactly {@code course}, in the order they joined it. */
+    public List<Student> studentsInCourse(String course) {
+        awaitLoaded();
+        Set<Student> students = byCourse.get(course);
+        return students == null ? Collections.emptyList() : new ArrayList<>(students);
     }
 
-    public ArrayList<Student> getAllStudents() {
-        return studentList;
+    /**
+     * The {@code limit} best matches for {@code query} in names and courses, best first.
+     * Words may be unfinished (type-ahead) or slightly misspelled; see {@link StudentSearchIndex}.
+     * The index is built by the loader thread along with the roster, so the first search does
+     * not stall the caller.
+     */
+    public List<Student> search(String query, int limit) {
+        awaitLoaded();
+        List<Student> results = new ArrayList<>();
+        for (int id : searchIndex.search(query, limit)) {
+            results.add(byId.get(id).student);
+        }
+        return results;
     }
 
-    public void updateStudent(int id, String newName, String newCourse) {
-        for (Student s : studentList) {
-            if (s.getId() == id) {
-                s.setName(newName);
-                s.setCourse(newCourse);
-                break;
+    public int size() {
+        awaitLoaded();
+        return byId.size();
+    }
+
+    public boolean updateStudent(int id, String newName, String newCourse) {
+        awaitLoaded();
+        Entry entry = byId.get(id);
+        if (entry == null) {
+            return false; // Student not found
+        }
+        change(entry, newName, newCourse);
+        StudentStore current = store;
+        if (current != null) {
+            try {
+                current.appendUpdate(entry.student);
+            } catch (IOException e) {
+                System.err.println("Error writing student log: " + e.getMessage());
             }
+            compactIfNeeded();
+        }
+        return true;
+    }
+
+    private void change(Entry entry, String newName, String newCourse) {
+        Student student = entry.student;
+        if (!student.getCourse().equals(newCourse)) {
+            removeFromCourse(student);
+            byCourse.computeIfAbsent(newCourse, c -> new LinkedHashSet<>()).add(student);
+        }
+        student.setName(newName);
+        student.setCourse(newCourse);
+        if (searchIndex != null) {
+            searchIndex.update(student.getId(), newName, newCourse);
+        }
+    }
+
+    public boolean deleteStudent(int id) {
+        awaitLoaded();
+        if (!remove(id)) {
+            return false;
+        }
+        StudentStore current = store;
+        if (current != null) {
+            try {
+                current.appendDelete(id);
+            } catch (IOException e) {
+                System.err.println("Error writing student log: " + e.getMessage());
+            }
+            compactIfNeeded();
+        }
+        return true;
+    }
+
+    private boolean remove(int id) {
+        Entry entry = byId.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        order[entry.slot] = null;
+        removeFromCourse(entry.student);
+        if (searchIndex != null) {
+            searchIndex.remove(id);
+        }
+        return true;
+    }
+
+    /** Durability point: every change made so far is forced to disk when this returns. */
+    public void flush() {
+        awaitLoaded();
+        StudentStore current = store;
+        if (current != null) {
+            try {
+                current.sync();
+            } catch (IOException e) {
+                System.err.println("Error flushing student log: " + e.getMessage());
+            }
+        }
+    }
+
+    /** Writes a full snapshot and empties the log. */
+    public void compact() {
+        awaitLoaded();
+        StudentStore current = store;
+        if (current != null) {
+            writeSnapshot(current);
         }
     }
 
-    public void deleteStudent(int id) {
-        studentList.removeIf(s -> s.getId() == id);
+    private boolean writeSnapshot(StudentStore current) {
+        try {
+            current.compact(getAllStudents());
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error saving students: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /** Folds the log into the snapshot, so the next start only has to read one file. */
+    @Override
+    public void close() {
+        awaitLoaded();
+        StudentStore current = store;
+        if (current == null) {
+            return;
+        }
+        if (current.getLogCount() > 0) {
+            compact();
+        }
+        try {
+            current.close();
+        } catch (IOException e) {
+            System.err.println("Error closing student log: " + e.getMessage());
+        }
+        store = null;
+    }
+
+    // Compaction rewrites the whole roster, so it waits until the log is as long as the roster
+    private void compactIfNeeded() {
+        if (store.getLogCount() >= Math.max(MIN_COMPACTION_RECORDS, byId.size())) {
+            compact();
+        }
+    }
+
+    // Runs on the loader thread; the roster is published to other threads by completing 'loaded'
+    private void load() {
+        long start = System.nanoTime();
+        try {
+            store.load(new StudentStore.Loader() {
+                @Override
+                public void add(Student student) {
+                    insert(student);
+                }
+
+                @Override
+                public void update(int id, String name, String course) {
+                    Entry entry = byId.get(id);
+                    if (entry != null) {
+                        change(entry, name, course);
+                    }
+                }
+
+                @Override
+                public void delete(int id) {
+                    remove(id);
+                }
+            });
+            System.out.println("Loaded " + byId.size() + " students in " + (System.nanoTime() - start) / 1_000_000
+                    + " ms.");
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error loading students, changes will not be saved: " + e.getMessage());
+            try {
+                store.close();
+            } catch (IOException closeError) {
+                System.err.println("Error closing student log: " + closeError.getMessage());
+            }
+            store = null;
+        } finally {
+            loaded.complete(null);
+        }
+    }
+
+    private void removeFromCourse(Student student) {
+        Set<Student> students = byCourse.get(student.getCourse());
+        if (students != null) {
+            students.remove(student);
+            if (students.isEmpty()) {
+                byCourse.remove(student.getCourse());
+            }
+        }
+    }
+
+    // Squeezes out deleted slots, and grows the array only if it is still mostly full
+    private void compactOrder() {
+        squeezeOrder();
+        if (orderSize > order.length / 2) {
+            order = Arrays.copyOf(order, order.length * 2);
+        }
+    }
+
+    private void squeezeOrder() {
+        int live = 0;
+        for (int i = 0; i < orderSize; i++) {
+            if (order[i] != null) {
+                order[live] = order[i];
+                order[live].slot = live;
+                live++;
+            }
+        }
+        Arrays.fill(order, live, orderSize, null);
+        orderSize = live;
     }
 }
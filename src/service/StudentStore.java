@@ -0,0 +1,455 @@
+package service;
+
+import model.Student;
+import util.IntObjectHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Durable storage for the student roster: a compact binary snapshot plus an append log of
+ * the changes made since it was written.
+ *
+ * <pre>
+ * snapshot : int magic ("SFST"), short version, int count, int indexOffset,
+ *            count records of int id, short nameLength, name (UTF-8), short courseLength, course (UTF-8),
+ *            then the index: count pairs of int id, int recordOffset, sorted by id
+ * log      : records of int length, int crc32, then byte op, int id and, for adds and updates,
+ *            short nameLength, name, short courseLength, course
+ * </pre>
+ *
+ * Opening checks the snapshot header and reads the log (which compaction keeps short), so
+ * {@link #find} answers from the sorted index with a binary search of positional reads before
+ * anything is loaded onto the heap. The snapshot is read through a channel, not mapped: Java
+ * cannot unmap a file, and Windows refuses to replace a file that is still mapped.
+ * Each log record is handed to the OS as soon as it is appended and {@link #sync} forces it to
+ * disk; a torn or corrupt tail left by a crash is cut off on open. Snapshots are written to a
+ * temporary file, forced and renamed into place, so a crash leaves the old or the new one.
+ *
+ * Not thread-safe, except that {@link #find} and {@link #load} may run concurrently as long
+ * as nothing is appended meanwhile.
+ */
+public class StudentStore implements Closeable {
+    private static final int MAGIC = 0x53465354; // "SFST"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 4 + 4;
+    private static final int BUFFER_SIZE = 128 * 1024; // Holds the largest possible record
+
+    static final byte OP_ADD = 'A';
+    static final byte OP_UPDATE = 'U';
+    static final byte OP_DELETE = 'D';
+
+    // Marks a student deleted by the log in the overlay
+    private static final Student DELETED = new Student(0, "", "");
+
+    /** Receives the roster from {@link #load}: the snapshot as adds, then the log in order. */
+    public interface Loader {
+        void add(Student student);
+
+        void update(int id, String name, String course);
+
+        void delete(int id);
+    }
+
+    // One log record; name and course are null for deletes
+    private static final class Change {
+        final byte op;
+        final int id;
+        final String name;
+        final String course;
+
+        Change(byte op, int id, String name, String course) {
+            this.op = op;
+            this.id = id;
+            this.name = name;
+            this.course = course;
+        }
+    }
+
+    private final Path dataFile;
+    private final Path logFile;
+    private FileChannel snapshot; // Null while there is no snapshot
+    private int snapshotCount;
+    private int indexOffset;
+    // The log: in order for load(), and as the latest state per ID for find()
+    private final List<Change> changes = new ArrayList<>();
+    private final IntObjectHashMap<Student> overlay = new IntObjectHashMap<>();
+    private final FileChannel log;
+    private final CRC32 crc = new CRC32();
+
+    public StudentStore(Path dataFile, Path logFile) throws IOException {
+        this.dataFile = dataFile;
+        this.logFile = logFile;
+        openSnapshot();
+        try {
+            readLog();
+        } catch (IOException e) {
+            closeSnapshot();
+            throw e;
+        }
+        log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /** The stored student with this ID, or null. Decodes a single record; nothing is cached. */
+    public Student find(int id) throws IOException {
+        Student changed = overlay.get(id);
+        if (changed != null) {
+            return changed == DELETED ? null : new Student(id, changed.getName(), changed.getCourse());
+        }
+        ByteBuffer entry = ByteBuffer.allocate(8);
+        int low = 0;
+        int high = snapshotCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            readFully(entry.clear(), indexOffset + mid * 8L);
+            int midId = entry.getInt(0);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return readRecord(entry.getInt(4));
+            }
+        }
+        return null;
+    }
+
+    /** Streams the snapshot in roster order, then replays the log. */
+    public void load(Loader loader) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).limit(0);
+        long position = HEADER_SIZE;
+        for (int i = 0; i < snapshotCount; i++) {
+            position = fill(buffer, position, 4 + 2);
+            int nameLength = buffer.getShort(buffer.position() + 4) & 0xFFFF;
+            position = fill(buffer, position, 4 + 2 + nameLength + 2);
+            int courseLength = buffer.getShort(buffer.position() + 4 + 2 + nameLength) & 0xFFFF;
+            position = fill(buffer, position, 4 + 2 + nameLength + 2 + courseLength);
+            loader.add(new Student(buffer.getInt(), getString(buffer), getString(buffer)));
+        }
+        for (Change change : changes) {
+            if (change.op == OP_ADD) {
+                loader.add(new Student(change.id, change.name, change.course));
+            } else if (change.op == OP_UPDATE) {
+                loader.update(change.id, change.name, change.course);
+            } else {
+                loader.delete(change.id);
+            }
+        }
+    }
+
+    /** Rejects a name or course that could not be written to a student file. */
+    public static void checkFields(String name, String course) {
+        if (name == null || course == null) {
+            throw new IllegalArgumentException("Name and course are required.");
+        }
+        for (String value : new String[]{name, course}) {
+            // Up to three UTF-8 bytes per char, so only long values need encoding to be sure
+            if (value.length() > 0x7FFF / 3 && value.getBytes(StandardCharsets.UTF_8).length > 0x7FFF) {
+                throw new IllegalArgumentException("Field too long for student file: " + value.length() + " chars");
+            }
+        }
+    }
+
+    public void appendAdd(Student student) throws IOException {
+        append(OP_ADD, student.getId(), student.getName(), student.getCourse());
+    }
+
+    public void appendUpdate(Student student) throws IOException {
+        append(OP_UPDATE, student.getId(), student.getName(), student.getCourse());
+    }
+
+    public void appendDelete(int id) throws IOException {
+        append(OP_DELETE, id, null, null);
+    }
+
+    /** Number of records in the log, used to decide when to compact. */
+    public int getLogCount() {
+        return changes.size();
+    }
+
+    /** Forces the log to the storage device (fsync). */
+    public void sync() throws IOException {
+        log.force(false);
+    }
+
+    /**
+     * Writes {@code students} as the new snapshot and empties the log. The snapshot is on disk
+     * before the log is truncated; if we crash in between, replaying the old log over the new
+     * snapshot gives the same roster, because adds of a present ID and deletes or updates of a
+     * missing one are harmless for a {@link Loader}.
+     */
+    public void compact(Collection<Student> students) throws IOException {
+        writeSnapshot(students);
+        log.truncate(0);
+        log.force(false);
+        changes.clear();
+        overlay.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSnapshot();
+        if (log.isOpen()) {
+            log.force(false);
+            log.close();
+        }
+    }
+
+    private void append(byte op, int id, String name, String course) throws IOException {
+        byte[] nameBytes = name == null ? null : encode(name);
+        byte[] courseBytes = course == null ? null : encode(course);
+        int payloadLength = 1 + 4 + (name == null ? 0 : 2 + nameBytes.length + 2 + courseBytes.length);
+        ByteBuffer record = ByteBuffer.allocate(8 + payloadLength);
+        record.position(8);
+        record.put(op).putInt(id);
+        if (name != null) {
+            record.putShort((short) nameBytes.length).put(nameBytes);
+            record.putShort((short) courseBytes.length).put(courseBytes);
+        }
+        crc.reset();
+        crc.update(record.array(), 8, payloadLength);
+        record.putInt(0, payloadLength).putInt(4, (int) crc.getValue());
+        record.flip();
+        while (record.hasRemaining()) {
+            log.write(record);
+        }
+        remember(new Change(op, id, name, course));
+    }
+
+    private void remember(Change change) {
+        changes.add(change);
+        overlay.put(change.id, change.op == OP_DELETE ? DELETED : new Student(change.id, change.name, change.course));
+    }
+
+    // Opens the snapshot and checks its header; records are read on demand
+    private void openSnapshot() throws IOException {
+        snapshot = null;
+        snapshotCount = 0;
+        if (!Files.exists(dataFile)) {
+            return;
+        }
+        FileChannel channel = FileChannel.open(dataFile, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Corrupt student snapshot " + dataFile + " (" + size + " bytes)");
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // Keep reading until the header is complete
+            }
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("Not a student data file: " + dataFile);
+            }
+            if (header.getShort(4) > VERSION) {
+                throw new IOException("Unsupported student file version " + header.getShort(4));
+            }
+            int count = header.getInt(6);
+            int index = header.getInt(10);
+            if (count < 0 || index < HEADER_SIZE || (long) index + 8L * count != size) {
+                throw new IOException("Corrupt student snapshot " + dataFile);
+            }
+            snapshot = channel;
+            snapshotCount = count;
+            indexOffset = index;
+        } finally {
+            if (snapshot != channel) {
+                channel.close();
+            }
+        }
+    }
+
+    private void closeSnapshot() throws IOException {
+        if (snapshot != null) {
+            snapshot.close();
+            snapshot = null;
+            snapshotCount = 0;
+        }
+    }
+
+    private void writeSnapshot(Collection<Student> students) throws IOException {
+        Path temp = dataFile.resolveSibling(dataFile.getFileName() + ".tmp");
+        long[] index = new long[students.size()]; // id in the high half, record offset in the low half
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.position(HEADER_SIZE); // Filled in once the index offset is known
+            long offset = HEADER_SIZE;
+            int count = 0;
+            for (Student student : students) {
+                byte[] name = encode(student.getName());
+                byte[] course = encode(student.getCourse());
+                int length = 4 + 2 + name.length + 2 + course.length;
+                if (offset + length + 8L * students.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Student roster too large for one snapshot file");
+                }
+                if (buffer.remaining() < length) {
+                    drain(channel, buffer);
+                }
+                index[count++] = ((long) student.getId() << 32) | offset;
+                buffer.putInt(student.getId());
+                buffer.putShort((short) name.length).put(name);
+                buffer.putShort((short) course.length).put(course);
+                offset += length;
+            }
+            Arrays.sort(index, 0, count);
+            for (int i = 0; i < count; i++) {
+                if (buffer.remaining() < 8) {
+                    drain(channel, buffer);
+                }
+                buffer.putInt((int) (index[i] >> 32)).putInt((int) index[i]);
+            }
+            drain(channel, buffer);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putInt(count).putInt((int) offset).flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        }
+        closeSnapshot(); // Windows will not replace a file that is still open without sharing
+        try {
+            Files.move(temp, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, dataFile, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            openSnapshot(); // The new snapshot, or the old one if the rename failed
+        }
+    }
+
+    // Reads records up to the end or the first bad one, and cuts off anything after it
+    private void readLog() throws IOException {
+        if (!Files.exists(logFile)) {
+            return;
+        }
+        long valid = 0;
+        try (InputStream raw = Files.newInputStream(logFile);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(raw, BUFFER_SIZE))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] payload;
+                try {
+                    int checksum = in.readInt();
+                    if (length < 5 || length > 1 << 20) {
+                        throw new IOException("bad record length " + length);
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        throw new IOException("checksum mismatch");
+                    }
+                } catch (IOException e) {
+                    System.err.println("Student log " + logFile.getFileName() + ": ignoring bad record at offset "
+                            + valid + " (" + (e instanceof EOFException ? "truncated record" : e.getMessage()) + ")");
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.wrap(payload);
+                byte op = record.get();
+                int id = record.getInt();
+                if (op == OP_DELETE) {
+                    remember(new Change(op, id, null, null));
+                } else {
+                    remember(new Change(op, id, getString(record), getString(record)));
+                }
+                valid += 8 + length;
+            }
+        }
+        if (Files.size(logFile) > valid) {
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+    }
+
+    // One snapshot record; a small first read covers typical names, longer ones take a second
+    private Student readRecord(int offset) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(Math.min(256, indexOffset - offset));
+        readFully(record, offset);
+        int nameLength = record.getShort(4) & 0xFFFF;
+        int length = 4 + 2 + nameLength + 2;
+        if (length <= record.limit()) {
+            length += record.getShort(length - 2) & 0xFFFF;
+        } else {
+            length += 0x7FFF; // Course length not read yet; bounded by the field limit
+        }
+        if (length > record.limit()) {
+            record = ByteBuffer.allocate(Math.min(length, indexOffset - offset));
+            readFully(record, offset);
+        }
+        record.flip();
+        return new Student(record.getInt(), getString(record), getString(record));
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (snapshot.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Corrupt student snapshot " + dataFile);
+            }
+        }
+    }
+
+    // Makes at least 'needed' bytes available in the buffer, reading on from the file position;
+    // returns the position after the bytes read
+    private long fill(ByteBuffer buffer, long position, int needed) throws IOException {
+        if (buffer.remaining() >= needed) {
+            return position;
+        }
+        buffer.compact();
+        while (buffer.position() < needed) {
+            int read = snapshot.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Corrupt student snapshot " + dataFile);
+            }
+            position += read;
+        }
+        buffer.flip();
+        return position;
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0x7FFF) {
+            throw new IOException("Field too long for student file: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -5,7 +5,6 @@ import model.InventoryItem;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.KeyEvent; // For keyboard events
 import java.util.List;
@@ -17,7 +16,7 @@ public class InventoryGUI extends JFrame {
     private JTextField idField, nameField, quantityField, priceField, searchField;
     private JButton addButton, updateButton, deleteButton, clearButton, searchButton;
     private JTable inventoryTable;
-    private DefaultTableModel tableModel;
+    private RecordTableModel<InventoryItem> tableModel;
     private JLabel statusBar;
     private JTabbedPane tabbedPane; // For tabbed interface
 
@@ -27,6 +26,12 @@ public class InventoryGUI extends JFrame {
         setSize(900, 650); // Slightly increased size
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLocationRelativeTo(null); // Center the window
+        addWindowListener(new java.awt.event.WindowAdapter() {
+            @Override
+            public void windowClosing(java.awt.event.WindowEvent e) {
+                inventoryManager.close(); // Commit pending journal records before exit
+            }
+        });
 
         initComponents();
         addEventHandlers();
@@ -119,12 +124,9 @@ public class InventoryGUI extends JFrame {
         searchControlPanel.add(searchButton);
 
         String[] columnNames = {"ID", "Name", "Quantity", "Price"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false; // Make cells non-editable
-            }
-        };
+        // Read-only; the price is only formatted for rows that are actually painted
+        tableModel = new RecordTableModel<>(columnNames, InventoryItem::getId, InventoryItem::getName,
+                InventoryItem::getQuantity, item -> String.format("%.2f", item.getPrice()));
         inventoryTable = new JTable(tableModel);
         inventoryTable.setFillsViewportHeight(true); // Table fills the viewport
         inventoryTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION); // Only one row selectable
@@ -241,11 +243,8 @@ public class InventoryGUI extends JFrame {
     }
 
     private void refreshTable() {
-        tableModel.setRowCount(0); // Clear existing rows
         List<InventoryItem> items = inventoryManager.getAllItems();
-        for (InventoryItem item : items) {
-            tableModel.addRow(new Object[]{item.getId(), item.getName(), item.getQuantity(), String.format("%.2f", item.getPrice())});
-        }
+        tableModel.setRows(items); // One change event for the whole list
         statusBar.setText("Inventory refreshed. Displaying " + items.size() + " items.");
     }
 
@@ -349,10 +348,7 @@ public class InventoryGUI extends JFrame {
             statusBar.setText("Search results for '" + query + "'. Found: " + results.size() + " items.");
         }
 
-        tableModel.setRowCount(0); // Clear existing rows
-        for (InventoryItem item : results) {
-            tableModel.addRow(new Object[]{item.getId(), item.getName(), item.getQuantity(), String.format("%.2f", item.getPrice())});
-        }
+        tableModel.setRows(results);
         tabbedPane.setSelectedComponent(tabbedPane.getComponentAt(1)); // Switch to Browse & Search tab
     }
 
@@ -0,0 +1,68 @@
+package ui;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Read-only table model over a list of records. Cells are computed by a per-column function
+ * when the table asks for them, and JTable only asks for the rows it paints, so formatting
+ * costs scale with the visible rows rather than the data. {@link #setRows} swaps in a new
+ * snapshot with a single change event instead of one event per row.
+ */
+public class RecordTableModel<T> extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    private final String[] columnNames;
+    private final List<Function<? super T, ?>> columns;
+    private List<? extends T> rows = Collections.emptyList();
+
+    @SafeVarargs
+    public RecordTableModel(String[] columnNames, Function<? super T, ?>... columns) {
+        if (columnNames.length != columns.length) {
+            throw new IllegalArgumentException("Need one column function per column name.");
+        }
+        this.columnNames = columnNames;
+        // Copied element by element: handing the varargs array on would be a heap-pollution risk
+        List<Function<? super T, ?>> copy = new ArrayList<>(columns.length);
+        for (Function<? super T, ?> column : columns) {
+            copy.add(column);
+        }
+        this.columns = Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * Shows {@code rows}. Pass a snapshot or copy, or a live view that is only changed on the
+     * event thread and handed in again after every change.
+     */
+    public void setRows(List<? extends T> rows) {
+        this.rows = rows;
+        fireTableDataChanged();
+    }
+
+    public T getRow(int row) {
+        return rows.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columnNames[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        return columns.get(column).apply(rows.get(row));
+    }
+}
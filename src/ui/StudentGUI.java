@@ -4,18 +4,27 @@ import model.Student;
 import service.StudentService;
 
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.*;
+import java.nio.file.Paths;
 
 public class StudentGUI extends JFrame {
-    private final StudentService studentService = new StudentService();
+    private static final String DATA_FILE = "students.dat";
+    private static final String LOG_FILE = "students.log";
+    private static final int SEARCH_RESULTS = 100;
+
+    // Loads in the background; the table is filled once the roster is in memory
+    private final StudentService studentService = new StudentService(Paths.get(DATA_FILE), Paths.get(LOG_FILE));
 
     private final JTextField idField = new JTextField();
     private final JTextField nameField = new JTextField();
     private final JTextField courseField = new JTextField();
+    private final JTextField searchField = new JTextField(30);
 
-    private final DefaultTableModel tableModel = new DefaultTableModel(new Object[]{"ID", "Name", "Course"}, 0);
+    private final RecordTableModel<Student> tableModel = new RecordTableModel<>(new String[]{"ID", "Name", "Course"},
+            Student::getId, Student::getName, Student::getCourse);
     private final JTable studentTable = new JTable(tableModel);
 
     public StudentGUI() {
@@ -23,6 +32,12 @@ public class StudentGUI extends JFrame {
         setSize(700, 450);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setLayout(new BorderLayout(10, 10));
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                studentService.close(); // Fold the log into the snapshot before exit
+            }
+        });
 
         // Top Panel - Form
         JPanel formPanel = new JPanel(new GridLayout(4, 2, 10, 10));
@@ -55,6 +70,29 @@ public class StudentGUI extends JFrame {
         JScrollPane tableScroll = new JScrollPane(studentTable);
         tableScroll.setBorder(BorderFactory.createTitledBorder("Student Records"));
 
+        // Search as you type: an empty query lists everyone, otherwise the best matches come first
+        JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 10, 0));
+        searchPanel.add(new JLabel("Search:"));
+        searchPanel.add(searchField);
+        searchField.setToolTipText("Name or course; unfinished words and small typos are fine");
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                refreshTable();
+            }
+
+            public void removeUpdate(DocumentEvent e) {
+                refreshTable();
+            }
+
+            public void changedUpdate(DocumentEvent e) {
+                refreshTable();
+            }
+        });
+        searchField.addActionListener(e -> refreshTable()); // Keeps Enter here from adding a student
+        JPanel centerPanel = new JPanel(new BorderLayout(5, 5));
+        centerPanel.add(searchPanel, BorderLayout.NORTH);
+        centerPanel.add(tableScroll, BorderLayout.CENTER);
+
         // Bottom Hint Panel
         JLabel hintLabel = new JLabel("💡 Shortcuts: [Enter] Add | [Ctrl+U] Update | [Delete] Delete | [Esc] Clear");
         hintLabel.setHorizontalAlignment(SwingConstants.CENTER);
@@ -62,7 +100,7 @@ public class StudentGUI extends JFrame {
 
         //  Add Panels to Frame
         add(formPanel, BorderLayout.NORTH);
-        add(tableScroll, BorderLayout.CENTER);
+        add(centerPanel, BorderLayout.CENTER);
         add(hintLabel, BorderLayout.SOUTH);
 
         // Event Listeners
@@ -121,6 +159,7 @@ public class StudentGUI extends JFrame {
         // Center the window
         setLocationRelativeTo(null);
         setVisible(true);
+        studentService.whenLoaded().thenRun(() -> SwingUtilities.invokeLater(this::refreshTable));
     }
 
     private void handleAdd() {
@@ -130,7 +169,10 @@ public class StudentGUI extends JFrame {
             String course = courseField.getText().trim();
 
             Student s = new Student(id, name, course);
-            studentService.addStudent(s);
+            if (!studentService.addStudent(s)) {
+                showError("A student with ID " + id + " already exists.");
+                return;
+            }
             refreshTable();
             clearFields();
         } catch (NumberFormatException ex) {
@@ -144,7 +186,10 @@ public class StudentGUI extends JFrame {
             String name = nameField.getText().trim();
             String course = courseField.getText().trim();
 
-            studentService.updateStudent(id, name, course);
+            if (!studentService.updateStudent(id, name, course)) {
+                showError("No student with ID " + id + ".");
+                return;
+            }
             refreshTable();
             clearFields();
         } catch (NumberFormatException ex) {
@@ -155,7 +200,10 @@ public class StudentGUI extends JFrame {
     private void handleDelete() {
         try {
             int id = Integer.parseInt(idField.getText().trim());
-            studentService.deleteStudent(id);
+            if (!studentService.deleteStudent(id)) {
+                showError("No student with ID " + id + ".");
+                return;
+            }
             refreshTable();
             clearFields();
         } catch (NumberFormatException ex) {
@@ -164,10 +212,13 @@ public class StudentGUI extends JFrame {
     }
 
     private void refreshTable() {
-        tableModel.setRowCount(0); // Clear existing
-        for (Student s : studentService.getAllStudents()) {
-            tableModel.addRow(new Object[]{s.getId(), s.getName(), s.getCourse()});
+        if (!studentService.isLoaded()) {
+            return; // Filled in once loading finishes
         }
+        String query = searchField.getText().trim();
+        // One change event; the roster is not copied, cells are read only for the rows being painted
+        tableModel.setRows(query.isEmpty() ? studentService.studentsView()
+                : studentService.search(query, SEARCH_RESULTS));
     }
 
     private void clearFields() {
@@ -0,0 +1,165 @@
+package util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Hash map from primitive {@code int} keys to objects, so lookups never box the key.
+ * Open addressing with linear probing in two parallel arrays; a null value marks a free
+ * slot, so null values are not allowed. Deletion shifts later entries of the probe run
+ * back instead of leaving tombstones. Not thread-safe.
+ */
+public final class IntObjectHashMap<V> {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    /** Receives one key/value pair; the key stays a primitive. */
+    public interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int shift;
+    private int size;
+    private int resizeAt;
+
+    public IntObjectHashMap() {
+        this(16);
+    }
+
+    public IntObjectHashMap(int expectedSize) {
+        allocate(Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = find(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /** Associates {@code value} with {@code key} and returns the previous value, or null. */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported.");
+        }
+        int slot = index(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size >= resizeAt) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    /** Removes {@code key} and returns its value, or null if it was absent. */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        V previous = (V) values[slot];
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (values[next] != null) {
+            int home = index(keys[next]);
+            // Move the entry back if the hole lies on its probe path (between home and next)
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[hole] = null;
+        size--;
+        return previous;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /** Visits every value in no particular order. */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        for (Object value : values) {
+            if (value != null) {
+                action.accept((V) value);
+            }
+        }
+    }
+
+    /** Visits every entry in no particular order. */
+    @SuppressWarnings("unchecked")
+    public void forEachEntry(EntryConsumer<? super V> action) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    private int find(int key) {
+        int slot = index(key);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Fibonacci hashing: the top bits of key * 2^32/phi spread sequential IDs across the table
+    private int index(int key) {
+        return (key * 0x9E3779B9) >>> shift;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        shift = Integer.numberOfLeadingZeros(capacity) + 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = index(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
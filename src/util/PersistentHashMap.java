@@ -0,0 +1,278 @@
+package util;
+
+import java.util.function.BiConsumer;
+
+/**
+ * Immutable hash map (hash array mapped trie).
+ * {@code put} and {@code remove} return a new map that shares all untouched nodes with
+ * the old one, so an update costs O(log32 n) and any existing map stays a valid snapshot.
+ */
+public final class PersistentHashMap<K, V> {
+    @SuppressWarnings("rawtypes")
+    private static final PersistentHashMap EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return root == null ? null : (V) root.find(0, hash(key), key);
+    }
+
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /** Returns a map with the mapping added or replaced. Null values are not allowed. */
+    public PersistentHashMap<K, V> put(K key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Null values are not supported.");
+        }
+        boolean[] added = new boolean[1];
+        Node base = root == null ? BitmapNode.EMPTY : root;
+        Node newRoot = base.put(0, hash(key), key, value, added);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, added[0] ? size + 1 : size);
+    }
+
+    public PersistentHashMap<K, V> remove(Object key) {
+        if (root == null) {
+            return this;
+        }
+        Node newRoot = root.remove(0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, size - 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (root != null) {
+            root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    private interface Node {
+        Object find(int shift, int hash, Object key);
+
+        Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /** Returns the node without the key, or null if the node became empty. */
+        Node remove(int shift, int hash, Object key);
+
+        void forEach(BiConsumer<Object, Object> action);
+    }
+
+    // Entries are stored as pairs: (key, value) for a leaf, (null, child node) for a subtree
+    private static final class BitmapNode implements Node {
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        final int bitmap;
+        final Object[] array;
+
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int bit = bitFor(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int idx = index(bit);
+            Object keyOrNull = array[2 * idx];
+            Object valueOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                return ((Node) valueOrNode).find(shift + 5, hash, key);
+            }
+            return key.equals(keyOrNull) ? valueOrNode : null;
+        }
+
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = bitFor(hash, shift);
+            int idx = index(bit);
+            if ((bitmap & bit) != 0) {
+                Object keyOrNull = array[2 * idx];
+                Object valueOrNode = array[2 * idx + 1];
+                if (keyOrNull == null) {
+                    Node child = ((Node) valueOrNode).put(shift + 5, hash, key, value, added);
+                    return child == valueOrNode ? this : new BitmapNode(bitmap, with(array, 2 * idx + 1, child));
+                }
+                if (key.equals(keyOrNull)) {
+                    return value == valueOrNode ? this : new BitmapNode(bitmap, with(array, 2 * idx + 1, value));
+                }
+                added[0] = true;
+                Node child = createNode(shift + 5, keyOrNull, valueOrNode, hash, key, value);
+                Object[] copy = with(array, 2 * idx, null);
+                copy[2 * idx + 1] = child;
+                return new BitmapNode(bitmap, copy);
+            }
+            added[0] = true;
+            Object[] copy = new Object[array.length + 2];
+            System.arraycopy(array, 0, copy, 0, 2 * idx);
+            copy[2 * idx] = key;
+            copy[2 * idx + 1] = value;
+            System.arraycopy(array, 2 * idx, copy, 2 * idx + 2, array.length - 2 * idx);
+            return new BitmapNode(bitmap | bit, copy);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            int bit = bitFor(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int idx = index(bit);
+            Object keyOrNull = array[2 * idx];
+            Object valueOrNode = array[2 * idx + 1];
+            if (keyOrNull == null) {
+                Node child = ((Node) valueOrNode).remove(shift + 5, hash, key);
+                if (child == valueOrNode) {
+                    return this;
+                }
+                if (child != null) {
+                    return new BitmapNode(bitmap, with(array, 2 * idx + 1, child));
+                }
+            } else if (!key.equals(keyOrNull)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, 2 * idx);
+            System.arraycopy(array, 2 * idx + 2, copy, 2 * idx, copy.length - 2 * idx);
+            return new BitmapNode(bitmap ^ bit, copy);
+        }
+
+        @Override
+        public void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (array[i] == null) {
+                    ((Node) array[i + 1]).forEach(action);
+                } else {
+                    action.accept(array[i], array[i + 1]);
+                }
+            }
+        }
+
+        private static Node createNode(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[]{key1, value1, key2, value2});
+            }
+            boolean[] ignored = new boolean[1];
+            return EMPTY.put(shift, hash1, key1, value1, ignored).put(shift, hash2, key2, value2, ignored);
+        }
+    }
+
+    // Keys whose full 32-bit hashes collide
+    private static final class CollisionNode implements Node {
+        final int hash;
+        final Object[] array;
+
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public Object find(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            return i < 0 ? null : array[i + 1];
+        }
+
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // Push this node one level down behind a bitmap node and insert there
+                return new BitmapNode(bitFor(this.hash, shift), new Object[]{null, this})
+                        .put(shift, hash, key, value, added);
+            }
+            int i = indexOf(key);
+            if (i >= 0) {
+                return array[i + 1] == value ? this : new CollisionNode(hash, with(array, i + 1, value));
+            }
+            added[0] = true;
+            Object[] copy = new Object[array.length + 2];
+            System.arraycopy(array, 0, copy, 0, array.length);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            int i = indexOf(key);
+            if (i < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, i);
+            System.arraycopy(array, i + 2, copy, i, copy.length - i);
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        public void forEach(BiConsumer<Object, Object> action) {
+            for (int i = 0; i < array.length; i += 2) {
+                action.accept(array[i], array[i + 1]);
+            }
+        }
+    }
+
+    private static int bitFor(int hash, int shift) {
+        return 1 << ((hash >>> shift) & 31);
+    }
+
+    private static Object[] with(Object[] array, int index, Object value) {
+        Object[] copy = array.clone();
+        copy[index] = value;
+        return copy;
+    }
+}
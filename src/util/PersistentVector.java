@@ -0,0 +1,139 @@
+package util;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Immutable indexed sequence (32-way trie with a tail buffer).
+ * {@code append} and {@code set} copy only the path to the changed leaf, so every
+ * version stays a valid snapshot and updates cost O(log32 n).
+ */
+public final class PersistentVector<T> {
+    private static final Object[] EMPTY_NODE = new Object[32];
+    @SuppressWarnings("rawtypes")
+    private static final PersistentVector EMPTY = new PersistentVector<>(0, 5, EMPTY_NODE, new Object[0]);
+
+    private final int count;
+    private final int shift;
+    private final Object[] root;
+    private final Object[] tail;
+
+    private PersistentVector(int count, int shift, Object[] root, Object[] tail) {
+        this.count = count;
+        this.shift = shift;
+        this.root = root;
+        this.tail = tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentVector<T> empty() {
+        return (PersistentVector<T>) EMPTY;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        checkIndex(index);
+        return (T) leafFor(index)[index & 31];
+    }
+
+    public PersistentVector<T> append(T value) {
+        if (count - tailOffset() < 32) {
+            Object[] newTail = Arrays.copyOf(tail, tail.length + 1);
+            newTail[tail.length] = value;
+            return new PersistentVector<>(count + 1, shift, root, newTail);
+        }
+        // Tail is full: push it into the trie and start a new one
+        Object[] newRoot;
+        int newShift = shift;
+        if ((count >>> 5) > (1 << shift)) {
+            newRoot = new Object[32];
+            newRoot[0] = root;
+            newRoot[1] = newPath(shift, tail);
+            newShift += 5;
+        } else {
+            newRoot = pushTail(shift, root, tail);
+        }
+        return new PersistentVector<>(count + 1, newShift, newRoot, new Object[]{value});
+    }
+
+    public PersistentVector<T> set(int index, T value) {
+        checkIndex(index);
+        if (index >= tailOffset()) {
+            Object[] newTail = tail.clone();
+            newTail[index & 31] = value;
+            return new PersistentVector<>(count, shift, root, newTail);
+        }
+        return new PersistentVector<>(count, shift, assoc(shift, root, index, value), tail);
+    }
+
+    /** Visits every element in index order, one leaf array at a time. */
+    @SuppressWarnings("unchecked")
+    public void forEach(Consumer<? super T> action) {
+        for (int i = 0; i < count; i += 32) {
+            Object[] leaf = leafFor(i);
+            int end = Math.min(32, count - i);
+            for (int j = 0; j < end; j++) {
+                action.accept((T) leaf[j]);
+            }
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + count);
+        }
+    }
+
+    private int tailOffset() {
+        return count < 32 ? 0 : ((count - 1) >>> 5) << 5;
+    }
+
+    private Object[] leafFor(int index) {
+        if (index >= tailOffset()) {
+            return tail;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= 5) {
+            node = (Object[]) node[(index >>> level) & 31];
+        }
+        return node;
+    }
+
+    private Object[] pushTail(int level, Object[] parent, Object[] tailNode) {
+        int subIndex = ((count - 1) >>> level) & 31;
+        Object[] copy = parent.clone();
+        Object[] toInsert;
+        if (level == 5) {
+            toInsert = tailNode;
+        } else {
+            Object[] child = (Object[]) parent[subIndex];
+            toInsert = child != null ? pushTail(level - 5, child, tailNode) : newPath(level - 5, tailNode);
+        }
+        copy[subIndex] = toInsert;
+        return copy;
+    }
+
+    private static Object[] newPath(int level, Object[] node) {
+        if (level == 0) {
+            return node;
+        }
+        Object[] path = new Object[32];
+        path[0] = newPath(level - 5, node);
+        return path;
+    }
+
+    private static Object[] assoc(int level, Object[] node, int index, Object value) {
+        Object[] copy = node.clone();
+        if (level == 0) {
+            copy[index & 31] = value;
+        } else {
+            int subIndex = (index >>> level) & 31;
+            copy[subIndex] = assoc(level - 5, (Object[]) node[subIndex], index, value);
+        }
+        return copy;
+    }
+}